@@ -1,38 +1,180 @@
 package com.example.skincareapp;
 
+import android.content.Context;
+import android.util.Log;
+
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 public class ApiClient {
+    private static final String TAG = "ApiClient";
     private static final String BASE_URL = "https://makeup-api.herokuapp.com/";
+    private static final String OPEN_BEAUTY_FACTS_HOST = "world.openbeautyfacts.org";
+    private static final String OPEN_BEAUTY_FACTS_URL = "https://" + OPEN_BEAUTY_FACTS_HOST + "/";
+
+    public static final long DEFAULT_CACHE_SIZE_BYTES = 20L * 1024 * 1024;
+    private static final String CACHE_DIRECTORY = "http-cache";
+
+    // Freshness applied when a host sends no caching headers of its own; results derived from a
+    // response are cached no longer than this either
+    static final int MAKEUP_API_MAX_AGE_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+    private static final int OPEN_BEAUTY_FACTS_MAX_AGE_SECONDS = (int) TimeUnit.MINUTES.toSeconds(10);
+
     private static ApiClient instance;
+    private static File cacheDirectory;
+    private static long cacheSizeBytes = DEFAULT_CACHE_SIZE_BYTES;
+
     private final ProductApiService apiService;
+    private final OpenBeautyFactsApiService openBeautyFactsService;
+    private final SingleFlight singleFlight;
+    private final Cache cache;
+    private final CacheMetrics cacheMetrics = new CacheMetrics();
+    private volatile boolean offlineMode;
+
+    /**
+     * Counts of how requests were served by the HTTP cache.
+     */
+    public static final class CacheStats {
+        public final long hits;
+        public final long conditionalHits;
+        public final long misses;
+        // Sum of Content-Length for bodies served from disk instead of the network, where known
+        public final long bytesSaved;
+
+        CacheStats(long hits, long conditionalHits, long misses, long bytesSaved) {
+            this.hits = hits;
+            this.conditionalHits = conditionalHits;
+            this.misses = misses;
+            this.bytesSaved = bytesSaved;
+        }
+
+        @Override
+        public String toString() {
+            return "CacheStats{hits=" + hits +
+                    ", conditionalHits=" + conditionalHits +
+                    ", misses=" + misses +
+                    ", bytesSaved=" + bytesSaved +
+                    '}';
+        }
+    }
+
+    /**
+     * One listener for every call; OkHttp reports each cache decision through it. A revalidation
+     * is reported as cacheConditionalHit followed by cacheHit (304) or cacheMiss (200), so it is
+     * only counted once that outcome is known, and every call lands in exactly one bucket.
+     */
+    private static final class CacheMetrics extends EventListener {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong conditionalHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong bytesSaved = new AtomicLong();
+        // Calls that sent a conditional request and are waiting for its answer
+        private final Set<Call> revalidating = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void cacheHit(Call call, Response response) {
+            if (revalidating.remove(call)) {
+                conditionalHits.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            addSavedBytes(response);
+        }
+
+        @Override
+        public void cacheConditionalHit(Call call, Response cachedResponse) {
+            revalidating.add(call);
+        }
+
+        @Override
+        public void cacheMiss(Call call) {
+            // A revalidation answered with a full body downloaded it after all
+            revalidating.remove(call);
+            misses.incrementAndGet();
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            revalidating.remove(call);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            revalidating.remove(call);
+        }
+
+        private void addSavedBytes(Response response) {
+            String length = response.header("Content-Length");
+            if (length == null) {
+                return;
+            }
+            try {
+                bytesSaved.addAndGet(Math.max(0L, Long.parseLong(length)));
+            } catch (NumberFormatException e) {
+                // Unknown length, nothing to add
+            }
+        }
+
+        CacheStats snapshot() {
+            return new CacheStats(hits.get(), conditionalHits.get(), misses.get(), bytesSaved.get());
+        }
+    }
 
     private ApiClient() {
         Gson gson = new GsonBuilder()
                 .setLenient()
+                .registerTypeAdapterFactory(new ProductTypeAdapterFactory())
                 .create();
 
         HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
         // Reduce logging in production to avoid crashes
         logging.setLevel(HttpLoggingInterceptor.Level.BASIC);
 
-        OkHttpClient client = new OkHttpClient.Builder()
+        if (cacheDirectory != null) {
+            cache = new Cache(cacheDirectory, cacheSizeBytes);
+        } else {
+            cache = null;
+            Log.w(TAG, "ApiClient created before initialize(), HTTP cache disabled");
+        }
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
                 .addInterceptor(logging)
+                .addInterceptor(this::applyOfflineMode)
+                .addNetworkInterceptor(ApiClient::applyCachePolicy)
+                .eventListener(cacheMetrics)
+                // Both APIs are single hosts, so a few idle keep-alive connections are enough
+                .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
                 // Add proper timeout configurations
-                .connectTimeout(30, TimeUnit.SECONDS)
+                .connectTimeout(15, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 // Add retry on connection failure
-                .retryOnConnectionFailure(true)
-                .build();
+                .retryOnConnectionFailure(true);
+        if (cache != null) {
+            builder.cache(cache);
+        }
+        OkHttpClient client = builder.build();
 
         Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl(BASE_URL)
@@ -41,6 +183,31 @@ public class ApiClient {
                 .build();
 
         apiService = retrofit.create(ProductApiService.class);
+
+        // Same client, so both hosts share the cache, connection pool and metrics
+        openBeautyFactsService = retrofit.newBuilder()
+                .baseUrl(OPEN_BEAUTY_FACTS_URL)
+                .build()
+                .create(OpenBeautyFactsApiService.class);
+        singleFlight = new SingleFlight(AppExecutors.getInstance().networkIO());
+    }
+
+    /**
+     * Enables the on-disk HTTP cache. Must run before the first {@link #getInstance()} call;
+     * later calls are ignored.
+     */
+    public static synchronized void initialize(Context context, long maxCacheSizeBytes) {
+        if (instance != null) {
+            return;
+        }
+        cacheDirectory = new File(context.getApplicationContext().getCacheDir(), CACHE_DIRECTORY);
+        if (maxCacheSizeBytes > 0) {
+            cacheSizeBytes = maxCacheSizeBytes;
+        }
+    }
+
+    public static void initialize(Context context) {
+        initialize(context, DEFAULT_CACHE_SIZE_BYTES);
     }
 
     public static synchronized ApiClient getInstance() {
@@ -53,4 +220,70 @@ public class ApiClient {
     public ProductApiService getApiService() {
         return apiService;
     }
-}
\ No newline at end of file
+
+    public OpenBeautyFactsApiService getOpenBeautyFactsService() {
+        return openBeautyFactsService;
+    }
+
+    // Shared by every caller so identical concurrent requests go out once
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    public String getHost() {
+        return HttpUrl.get(BASE_URL).host();
+    }
+
+    /**
+     * When enabled, requests are answered only from the HTTP cache, however stale; anything not
+     * cached fails with a 504 instead of touching the network.
+     */
+    public void setOfflineMode(boolean offlineMode) {
+        this.offlineMode = offlineMode;
+    }
+
+    public boolean isOfflineMode() {
+        return offlineMode;
+    }
+
+    public CacheStats getCacheStats() {
+        return cacheMetrics.snapshot();
+    }
+
+    private Response applyOfflineMode(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        if (offlineMode) {
+            request = request.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build();
+        }
+        return chain.proceed(request);
+    }
+
+    // Keeps whatever caching policy the server sends, including no-store and no-cache; only a
+    // successful response with no caching headers at all is made cacheable for its host's max-age
+    private static Response applyCachePolicy(Interceptor.Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        int maxAge = maxAgeFor(chain.request().url().host());
+        if (maxAge <= 0 || !response.isSuccessful()) {
+            return response;
+        }
+
+        if (response.header("Cache-Control") != null || response.header("Expires") != null
+                || response.header("Pragma") != null) {
+            return response;
+        }
+
+        return response.newBuilder()
+                .header("Cache-Control", "public, max-age=" + maxAge)
+                .build();
+    }
+
+    private static int maxAgeFor(String host) {
+        if (HttpUrl.get(BASE_URL).host().equals(host)) {
+            return MAKEUP_API_MAX_AGE_SECONDS;
+        }
+        if (OPEN_BEAUTY_FACTS_HOST.equals(host)) {
+            return OPEN_BEAUTY_FACTS_MAX_AGE_SECONDS;
+        }
+        return 0;
+    }
+}
@@ -1,25 +1,105 @@
 package com.example.skincareapp;
 
 import android.content.Context;
+import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {ProductEntity.class}, version = 1)
+@Database(entities = {ProductEntity.class, ProductFtsEntity.class}, version = 3)
 
 public abstract class AppDatabase extends RoomDatabase {
+    private static final String TAG = "AppDatabase";
+    // The file favorites have always been written to, so existing installs keep their data
+    static final String DATABASE_NAME = "products-db";
+
     public abstract ProductDao productDao();
 
     private static AppDatabase instance;
 
+    // Adds brand and the keyset sort column, backfilling the sort key from existing names
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE products ADD COLUMN brand TEXT");
+            database.execSQL("ALTER TABLE products ADD COLUMN sortKey TEXT NOT NULL DEFAULT ''");
+            database.execSQL("UPDATE products SET sortKey = LOWER(COALESCE(name, ''))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_products_sortKey_id ON products (sortKey, id)");
+        }
+    };
+
+    /*
+     * Adds description, the type/price and favorite indices, and the products_fts shadow table.
+     * The table and triggers match what Room generates for ProductFtsEntity; the final statement
+     * indexes the rows that already exist.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE products ADD COLUMN description TEXT");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_products_productType_price ON products (productType, price)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_products_isFavorite ON products (isFavorite)");
+
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `products_fts` USING FTS4("
+                    + "`name` TEXT, `brand` TEXT, `description` TEXT, tokenize=unicode61, content=`products`)");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_BEFORE_UPDATE "
+                    + "BEFORE UPDATE ON `products` BEGIN DELETE FROM `products_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_BEFORE_DELETE "
+                    + "BEFORE DELETE ON `products` BEGIN DELETE FROM `products_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_AFTER_UPDATE "
+                    + "AFTER UPDATE ON `products` BEGIN INSERT INTO `products_fts`(`docid`, `name`, `brand`, `description`) "
+                    + "VALUES (NEW.`rowid`, NEW.`name`, NEW.`brand`, NEW.`description`); END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_AFTER_INSERT "
+                    + "AFTER INSERT ON `products` BEGIN INSERT INTO `products_fts`(`docid`, `name`, `brand`, `description`) "
+                    + "VALUES (NEW.`rowid`, NEW.`name`, NEW.`brand`, NEW.`description`); END");
+            database.execSQL("INSERT INTO products_fts(products_fts) VALUES('rebuild')");
+        }
+    };
+
+    /**
+     * The one database handle for the process. Write-ahead logging lets the read pool query while
+     * the single disk thread writes; reads run on {@link AppExecutors#diskRead()}, transactions on
+     * {@link AppExecutors#diskIO()}.
+     */
     public static synchronized AppDatabase getInstance(Context context) {
         if (instance == null) {
+            AppExecutors executors = AppExecutors.getInstance();
             instance = Room.databaseBuilder(
                     context.getApplicationContext(),
-                    AppDatabase.class, "skincare-db"
-            ).build();
+                    AppDatabase.class, DATABASE_NAME
+            )
+                    .addMigrations(MIGRATION_1_2, MIGRATION_2_3)
+                    .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                    .setQueryExecutor(executors.diskRead())
+                    .setTransactionExecutor(executors.diskIO())
+                    .build();
         }
         return instance;
     }
+
+    /**
+     * Opens the database (running any migration) and compiles the queries the first screens use,
+     * on the disk thread, so the first real query does not pay for either.
+     */
+    public static void warmUp(Context context) {
+        Context appContext = context.getApplicationContext();
+        AppExecutors.getInstance().diskIO().execute(() -> {
+            try {
+                AppDatabase database = getInstance(appContext);
+                database.getOpenHelper().getWritableDatabase();
+                ProductDao dao = database.productDao();
+                dao.count();
+                dao.countFavorites();
+                dao.getPageAfter("", "", 1);
+                dao.getFavoritesPageAfter("", "", 1);
+                Log.d(TAG, "Database warmed up");
+            } catch (Exception e) {
+                Log.e(TAG, "Error warming up database", e);
+            }
+        });
+    }
 }
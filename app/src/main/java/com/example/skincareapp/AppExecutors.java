@@ -0,0 +1,103 @@
+package com.example.skincareapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide thread pools for the product pipeline.
+ *
+ * Network calls block on I/O and get their own small pool; CPU-bound classification and filtering
+ * run on a compute pool sized to the device; database writes go through one disk thread while
+ * reads, which write-ahead logging lets run alongside them, get a small pool of their own; results
+ * are handed back through the main thread. A single scheduler thread drives deadlines and
+ * delayed work without blocking either pool.
+ */
+public class AppExecutors {
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int NETWORK_THREADS = 4;
+    // Matches the connections SQLite keeps open for concurrent readers in WAL mode
+    private static final int DISK_READ_THREADS = 4;
+    // Leave a core for the UI thread, but never fewer than one or more than four workers
+    private static final int COMPUTE_THREADS = Math.max(1, Math.min(CPU_COUNT - 1, 4));
+
+    private static AppExecutors instance;
+
+    private final ExecutorService networkIO;
+    private final ExecutorService compute;
+    private final ExecutorService diskIO;
+    private final ExecutorService diskRead;
+    private final Executor mainThread;
+    private final ScheduledExecutorService scheduler;
+
+    private AppExecutors() {
+        networkIO = newPool("network", NETWORK_THREADS);
+        compute = newPool("compute", COMPUTE_THREADS);
+        diskIO = newPool("disk", 1);
+        diskRead = newPool("disk-read", DISK_READ_THREADS);
+
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        mainThread = mainHandler::post;
+
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                runnable -> new Thread(runnable, "scheduler"));
+        timer.setRemoveOnCancelPolicy(true);
+        scheduler = timer;
+    }
+
+    public static synchronized AppExecutors getInstance() {
+        if (instance == null) {
+            instance = new AppExecutors();
+        }
+        return instance;
+    }
+
+    public ExecutorService networkIO() {
+        return networkIO;
+    }
+
+    public ExecutorService compute() {
+        return compute;
+    }
+
+    // Database writes and transactions, one at a time
+    public ExecutorService diskIO() {
+        return diskIO;
+    }
+
+    public ExecutorService diskRead() {
+        return diskRead;
+    }
+
+    public Executor mainThread() {
+        return mainThread;
+    }
+
+    // For timers only; scheduled tasks should hand real work to one of the other executors
+    public ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    private static ExecutorService newPool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, name + "-" + count.incrementAndGet());
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
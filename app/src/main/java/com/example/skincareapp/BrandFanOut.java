@@ -0,0 +1,250 @@
+package com.example.skincareapp;
+
+import android.util.Log;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import retrofit2.Response;
+
+/**
+ * One multi-brand search: runs the per-brand requests with bounded concurrency and a per-host
+ * rate limit, merges results into a single list de-duplicated by product ID, and cuts off any
+ * brand still outstanding when the latency budget runs out.
+ */
+class BrandFanOut {
+    private static final String TAG = "BrandFanOut";
+
+    // Shared across searches so back-to-back and concurrent fan-outs respect the same host limit,
+    // at a rate fixed per host
+    private static final Map<String, RateLimiter> hostLimiters = new ConcurrentHashMap<>();
+    private static final double HOST_REQUESTS_PER_SECOND = 4;
+    // How soon a brand that found no permit asks again
+    private static final long PERMIT_RETRY_MS = (long) Math.ceil(1000 / HOST_REQUESTS_PER_SECOND);
+
+    public static final class Options {
+        private int maxConcurrency = 3;
+        private long latencyBudgetMs = 8000;
+        private boolean incremental = false;
+        private long coalesceWindowMs = 150;
+
+        public Options setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            return this;
+        }
+
+        public Options setLatencyBudget(long duration, TimeUnit unit) {
+            this.latencyBudgetMs = Math.max(0, unit.toMillis(duration));
+            return this;
+        }
+
+        /**
+         * When set, the callback receives the merged list so far at most once per coalesce window,
+         * then once more with the final list. Otherwise it is called once with the final list.
+         */
+        public Options setIncremental(boolean incremental, long coalesceWindowMs) {
+            this.incremental = incremental;
+            this.coalesceWindowMs = Math.max(0, coalesceWindowMs);
+            return this;
+        }
+    }
+
+    private final List<String> brands;
+    private final Options options;
+    private final ProductRepository.ProductCallback callback;
+    private final Function<List<Product>, List<Product>> select;
+    private final AppExecutors executors;
+
+    private final SingleFlight singleFlight;
+    private final AtomicInteger nextBrand = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final AtomicInteger failures = new AtomicInteger();
+    // Listener -> request key, for every brand still waiting on the network
+    private final Map<SingleFlight.Listener<List<Product>>, String> pending = new ConcurrentHashMap<>();
+
+    // Guarded by merged; posting to the main thread under the lock keeps emissions in order
+    private final Map<String, Product> merged = new LinkedHashMap<>();
+    private boolean finished;
+    private boolean emissionPending;
+    private ScheduledFuture<?> deadline;
+
+    BrandFanOut(List<String> brands, Options options, ProductRepository.ProductCallback callback,
+                Function<List<Product>, List<Product>> select, AppExecutors executors) {
+        this.brands = new ArrayList<>(brands);
+        this.options = options != null ? options : new Options();
+        this.callback = callback;
+        this.select = select;
+        this.executors = executors;
+        this.singleFlight = ApiClient.getInstance().getSingleFlight();
+        this.remaining = new AtomicInteger(this.brands.size());
+    }
+
+    void start() {
+        if (brands.isEmpty()) {
+            finish("no brands");
+            return;
+        }
+
+        synchronized (merged) {
+            deadline = executors.scheduler().schedule(() -> finish("latency budget exceeded"),
+                    options.latencyBudgetMs, TimeUnit.MILLISECONDS);
+        }
+
+        // Each completed brand dispatches the next one, keeping at most maxConcurrency outstanding
+        int initial = Math.min(options.maxConcurrency, brands.size());
+        for (int i = 0; i < initial; i++) {
+            dispatchNext();
+        }
+    }
+
+    private void dispatchNext() {
+        int index = nextBrand.getAndIncrement();
+        if (index >= brands.size() || isFinished()) {
+            return;
+        }
+
+        acquirePermit(brands.get(index));
+    }
+
+    // Waits for a rate permit on the scheduler, so no network thread is held while it waits
+    private void acquirePermit(String brand) {
+        if (isFinished()) {
+            return;
+        }
+        if (limiterFor(ApiClient.getInstance().getHost()).tryAcquire()) {
+            executors.networkIO().execute(() -> fetchBrand(brand));
+        } else {
+            executors.scheduler().schedule(() -> acquirePermit(brand), PERMIT_RETRY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void fetchBrand(String brand) {
+        ApiClient apiClient = ApiClient.getInstance();
+        if (isFinished()) {
+            return;
+        }
+
+        String key = SingleFlight.key("products", brand, null);
+        SingleFlight.Listener<List<Product>> listener = new SingleFlight.Listener<List<Product>>() {
+            @Override
+            public void onResponse(Response<List<Product>> response) {
+                pending.remove(this);
+                if (response.isSuccessful() && response.body() != null) {
+                    List<Product> products = response.body();
+                    executors.compute().execute(() -> mergeBrand(brand, products));
+                    return;
+                }
+                Log.w(TAG, "Error loading brand " + brand + ": code " + response.code());
+                brandFailed();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                pending.remove(this);
+                Log.w(TAG, "Error loading brand " + brand + ": " + e.getMessage());
+                brandFailed();
+            }
+        };
+
+        pending.put(listener, key);
+        // Selected once per request; a body shared with other callers is only read from here on
+        singleFlight.execute(key, () -> apiClient.getApiService().getProductsByBrand(brand), select, listener);
+    }
+
+    private void brandFailed() {
+        failures.incrementAndGet();
+        brandDone();
+    }
+
+    private void mergeBrand(String brand, List<Product> products) {
+        try {
+            synchronized (merged) {
+                if (finished) {
+                    return;
+                }
+                for (Product product : products) {
+                    if (!merged.containsKey(product.getId())) {
+                        merged.put(product.getId(), product);
+                    }
+                }
+                Log.d(TAG, "Merged " + products.size() + " products for brand " + brand + ", " + merged.size() + " total");
+                if (options.incremental && !emissionPending) {
+                    emissionPending = true;
+                    executors.scheduler().schedule(this::emitPartial, options.coalesceWindowMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing brand " + brand, e);
+            failures.incrementAndGet();
+        }
+        brandDone();
+    }
+
+    private void brandDone() {
+        if (remaining.decrementAndGet() == 0) {
+            finish(null);
+        } else {
+            dispatchNext();
+        }
+    }
+
+    private void emitPartial() {
+        synchronized (merged) {
+            emissionPending = false;
+            if (finished) {
+                return;
+            }
+            List<Product> snapshot = Collections.unmodifiableList(new ArrayList<>(merged.values()));
+            executors.mainThread().execute(() -> callback.onProductsLoaded(snapshot));
+        }
+    }
+
+    private void finish(String cutOffReason) {
+        synchronized (merged) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+
+            if (cutOffReason != null) {
+                Log.w(TAG, "Fan-out stopped (" + cutOffReason + ") with " + pending.size() + " requests in flight");
+            }
+            // Stragglers are cancelled unless another caller is waiting on the same request
+            for (Map.Entry<SingleFlight.Listener<List<Product>>, String> entry : pending.entrySet()) {
+                singleFlight.abandon(entry.getValue(), entry.getKey());
+            }
+            pending.clear();
+
+            if (merged.isEmpty() && !brands.isEmpty() && failures.get() >= brands.size()) {
+                executors.mainThread().execute(() -> callback.onError("Failed to fetch products for all brands"));
+                return;
+            }
+
+            List<Product> result = Collections.unmodifiableList(new ArrayList<>(merged.values()));
+            executors.mainThread().execute(() -> callback.onProductsLoaded(result));
+        }
+    }
+
+    private boolean isFinished() {
+        synchronized (merged) {
+            return finished;
+        }
+    }
+
+    private static RateLimiter limiterFor(String host) {
+        return hostLimiters.computeIfAbsent(host, h -> RateLimiter.create(HOST_REQUESTS_PER_SECOND));
+    }
+}
@@ -0,0 +1,408 @@
+package com.example.skincareapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Offline-first copy of the full makeup-api catalog.
+ *
+ * The first successful download is written to a snapshot file in the app's files directory and
+ * kept in memory. Later lookups are answered from memory (or the snapshot after a process restart)
+ * and, once the snapshot is older than the configured TTL, a single background revalidation
+ * replaces it without blocking the caller. Products are enriched before they are written, so the
+ * snapshot carries the filled-in fields and searches never enrich a catalog product again.
+ */
+public class CatalogCache {
+    private static final String TAG = "CatalogCache";
+    private static final String SNAPSHOT_FILE = "catalog_snapshot.json";
+    // Separate from the temp file of a regular download, which may be running at the same time
+    private static final String STREAM_TEMP_SUFFIX = ".stream.tmp";
+    public static final long DEFAULT_TTL_MS = TimeUnit.HOURS.toMillis(12);
+
+    private static CatalogCache instance;
+
+    public interface CatalogCallback {
+        // version changes whenever a new catalog is published, so derived structures can be rebuilt
+        void onCatalogLoaded(List<Product> products, long version);
+        void onError(String errorMessage);
+    }
+
+    // Products, version and fetch time are published together so readers never mix two catalogs
+    private static final class Snapshot {
+        final List<Product> products;
+        final long version;
+        final long fetchedAt;
+
+        Snapshot(List<Product> products, long version, long fetchedAt) {
+            this.products = products;
+            this.version = version;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private final File snapshotFile;
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapterFactory(new ProductTypeAdapterFactory())
+            .create();
+    // Serves lookups in order, so concurrent first searches share one download
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    // Revalidation runs separately so stale reads never queue behind a download
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    // Released when the catalog stream in flight, if any, has written its snapshot or failed
+    private final AtomicReference<CountDownLatch> streaming = new AtomicReference<>();
+    private final AtomicLong versionCounter = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+    private volatile long ttlMs = DEFAULT_TTL_MS;
+
+    private CatalogCache(Context context) {
+        snapshotFile = new File(context.getApplicationContext().getFilesDir(), SNAPSHOT_FILE);
+    }
+
+    public static synchronized CatalogCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new CatalogCache(context);
+        }
+        return instance;
+    }
+
+    public void setTtl(long duration, TimeUnit unit) {
+        if (duration >= 0 && unit != null) {
+            ttlMs = unit.toMillis(duration);
+        }
+    }
+
+    public long getTtlMillis() {
+        return ttlMs;
+    }
+
+    /**
+     * Delivers the catalog on a background thread. Memory and snapshot hits are returned at once;
+     * a network fetch only happens when no local copy exists yet. While {@link #streamCatalog} is
+     * downloading, the load waits for its snapshot rather than starting a second download.
+     */
+    public void getCatalog(CatalogCallback callback) {
+        if (callback == null) {
+            Log.w(TAG, "Callback is null, cannot load catalog");
+            return;
+        }
+
+        loadExecutor.execute(() -> {
+            try {
+                if (snapshot == null) {
+                    awaitStream();
+                    readSnapshot();
+                }
+
+                Snapshot current = snapshot;
+                if (current != null) {
+                    callback.onCatalogLoaded(current.products, current.version);
+                    if (isStale()) {
+                        refreshInBackground();
+                    }
+                    return;
+                }
+
+                String error = fetchAndStore();
+                current = snapshot;
+                if (error == null && current != null) {
+                    callback.onCatalogLoaded(current.products, current.version);
+                } else {
+                    callback.onError(error);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading catalog", e);
+                callback.onError("Error loading catalog: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Forces a revalidation regardless of the snapshot age. Only one refresh runs at a time.
+     */
+    public void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        refreshExecutor.execute(() -> {
+            try {
+                String error = fetchAndStore();
+                if (error != null) {
+                    Log.w(TAG, "Catalog revalidation failed, keeping snapshot: " + error);
+                }
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    public boolean isStale() {
+        Snapshot current = snapshot;
+        return current == null || System.currentTimeMillis() - current.fetchedAt > ttlMs;
+    }
+
+    /**
+     * True when a search can be answered without downloading the catalog first.
+     */
+    public boolean hasLocalCopy() {
+        return snapshot != null || snapshotFile.exists();
+    }
+
+    public long getVersion() {
+        Snapshot current = snapshot;
+        return current != null ? current.version : 0;
+    }
+
+    public void clear() {
+        snapshot = null;
+        if (snapshotFile.exists() && !snapshotFile.delete()) {
+            Log.w(TAG, "Could not delete catalog snapshot");
+        }
+    }
+
+    /**
+     * Downloads the catalog with a pull parser instead of binding it as one list. Each product is
+     * enriched, appended to a new snapshot and handed to onProduct as soon as it is parsed, so
+     * nothing ever holds the whole catalog. The next {@link #getCatalog} reads the new snapshot.
+     * Only one stream downloads at a time; a second call waits for it and replays its catalog.
+     * Blocks the calling thread; returns null on success, otherwise an error message.
+     */
+    public String streamCatalog(Consumer<Product> onProduct) {
+        CountDownLatch done = new CountDownLatch(1);
+        if (!streaming.compareAndSet(null, done)) {
+            return replayCatalog(onProduct);
+        }
+
+        try {
+            return downloadStream(onProduct);
+        } finally {
+            streaming.set(null);
+            done.countDown();
+        }
+    }
+
+    private String downloadStream(Consumer<Product> onProduct) {
+        File tempFile = new File(snapshotFile.getPath() + STREAM_TEMP_SUFFIX);
+        ProductEnrichment enrichment = ProductEnrichment.getInstance();
+        int count = 0;
+
+        try {
+            Response<ResponseBody> response = ApiClient.getInstance().getApiService().streamAllProducts().execute();
+            if (!response.isSuccessful() || response.body() == null) {
+                return "API response unsuccessful. Code: " + response.code();
+            }
+
+            try (ResponseBody body = response.body();
+                 JsonReader reader = new JsonReader(body.charStream());
+                 JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                         new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    Product product = gson.fromJson(reader, Product.class);
+                    enrichment.enrich(product);
+                    gson.toJson(product, Product.class, writer);
+                    count++;
+                    onProduct.accept(product);
+                }
+                reader.endArray();
+                writer.endArray();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Catalog stream failed after " + count + " products", e);
+            deleteQuietly(tempFile);
+            return "Network error: " + (e.getMessage() != null ? e.getMessage() : "Unknown error");
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading catalog stream after " + count + " products", e);
+            deleteQuietly(tempFile);
+            return "Error processing response: " + e.getMessage();
+        }
+
+        if (!tempFile.renameTo(snapshotFile)) {
+            Log.e(TAG, "Could not replace catalog snapshot");
+            deleteQuietly(tempFile);
+            return "Could not save the catalog";
+        }
+        // Dropped rather than rebuilt here, which would hold the whole catalog after all
+        snapshot = null;
+        Log.d(TAG, "Streamed " + count + " products into the catalog snapshot");
+        return null;
+    }
+
+    // Hands every product of the loaded catalog to onProduct, once the stream in flight is done
+    private String replayCatalog(Consumer<Product> onProduct) {
+        CountDownLatch loaded = new CountDownLatch(1);
+        AtomicReference<List<Product>> products = new AtomicReference<>();
+        AtomicReference<String> error = new AtomicReference<>();
+        getCatalog(new CatalogCallback() {
+            @Override
+            public void onCatalogLoaded(List<Product> catalog, long version) {
+                products.set(catalog);
+                loaded.countDown();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                error.set(errorMessage);
+                loaded.countDown();
+            }
+        });
+
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted while waiting for the catalog";
+        }
+        List<Product> catalog = products.get();
+        if (catalog == null) {
+            return error.get();
+        }
+        for (Product product : catalog) {
+            onProduct.accept(product);
+        }
+        return null;
+    }
+
+    // Called on the load executor before reading the snapshot a running stream is about to write
+    private void awaitStream() {
+        CountDownLatch running = streaming.get();
+        if (running == null) {
+            return;
+        }
+        try {
+            running.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Returns null on success, otherwise an error message for the caller
+    private String fetchAndStore() {
+        try {
+            ApiClient apiClient = ApiClient.getInstance();
+            Response<List<Product>> response = apiClient.getSingleFlight().await(
+                    SingleFlight.key("products"), () -> apiClient.getApiService().getAllProducts());
+
+            if (!response.isSuccessful() || response.body() == null) {
+                return "API response unsuccessful. Code: " + response.code();
+            }
+
+            List<Product> fetched = new ArrayList<>(response.body());
+            Log.d(TAG, "Fetched " + fetched.size() + " products from API");
+
+            // Enrich and persist before publishing, so searches only ever read these products
+            int enriched = ProductEnrichment.getInstance().enrichAll(fetched);
+            Log.d(TAG, "Enriched " + enriched + " products");
+            if (!writeSnapshot(fetched)) {
+                // Still served from memory; the next launch downloads it again
+                Log.w(TAG, "Catalog not persisted, keeping it in memory only");
+            }
+            publish(fetched, System.currentTimeMillis());
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Catalog download failed", e);
+            return "Network error: " + (e.getMessage() != null ? e.getMessage() : "Unknown error");
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing catalog response", e);
+            return "Error processing response: " + e.getMessage();
+        }
+    }
+
+    private void readSnapshot() {
+        if (!snapshotFile.exists()) {
+            return;
+        }
+
+        Type listType = new TypeToken<List<Product>>() {}.getType();
+        try (Reader reader = new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8)) {
+            List<Product> restored = gson.fromJson(reader, listType);
+            if (restored != null && !restored.isEmpty()) {
+                long fetchedAt = snapshotFile.lastModified();
+                // Only products saved by an older enricher are redone, and the result is saved back
+                int enriched = ProductEnrichment.getInstance().enrichAll(restored);
+                if (enriched > 0) {
+                    Log.d(TAG, "Re-enriched " + enriched + " restored products");
+                    // Rewriting is not a download; keep the snapshot's age for the TTL check
+                    if (writeSnapshot(restored) && !snapshotFile.setLastModified(fetchedAt)) {
+                        Log.w(TAG, "Could not restore snapshot timestamp");
+                    }
+                }
+                publish(new ArrayList<>(restored), fetchedAt);
+                Log.d(TAG, "Restored " + restored.size() + " products from snapshot");
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Discarding unreadable catalog snapshot", e);
+            if (!snapshotFile.delete()) {
+                Log.w(TAG, "Could not delete catalog snapshot");
+            }
+        }
+    }
+
+    private void publish(List<Product> catalog, long fetchedAt) {
+        snapshot = new Snapshot(Collections.unmodifiableList(catalog), versionCounter.incrementAndGet(), fetchedAt);
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file.getName());
+        }
+    }
+
+    // Returns false if the snapshot on disk was left as it was
+    private boolean writeSnapshot(List<Product> catalog) {
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            gson.toJson(catalog, writer);
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing catalog snapshot", e);
+            deleteQuietly(tempFile);
+            return false;
+        }
+
+        if (!tempFile.renameTo(snapshotFile)) {
+            Log.e(TAG, "Could not replace catalog snapshot");
+            deleteQuietly(tempFile);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.skincareapp;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of skin concerns seen in this process, each given a bit position the first time it
+ * appears in product data. New concerns therefore need no code change; they simply take the next
+ * bit. Positions are only stable for the life of the process, so masks are never persisted.
+ */
+public final class ConcernVocabulary {
+    private static final ConcernVocabulary INSTANCE = new ConcernVocabulary();
+
+    private final Map<String, Integer> bits = new ConcurrentHashMap<>();
+    // Guarded by bits; concern names in bit order
+    private final List<String> names = new ArrayList<>();
+
+    private ConcernVocabulary() {
+    }
+
+    public static ConcernVocabulary getInstance() {
+        return INSTANCE;
+    }
+
+    public int size() {
+        return bits.size();
+    }
+
+    // Bit of the concern, or -1 if no product has had it
+    public int lookup(String concern) {
+        String key = normalize(concern);
+        if (key == null) {
+            return -1;
+        }
+        Integer bit = bits.get(key);
+        return bit != null ? bit : -1;
+    }
+
+    // Normalized concern at the bit, or null if the bit has not been assigned
+    public String nameOf(int bit) {
+        synchronized (bits) {
+            return bit >= 0 && bit < names.size() ? names.get(bit) : null;
+        }
+    }
+
+    // Bit of the concern, assigning the next free one if it is new; -1 for a blank concern
+    public int bitFor(String concern) {
+        String key = normalize(concern);
+        if (key == null) {
+            return -1;
+        }
+        Integer bit = bits.get(key);
+        if (bit != null) {
+            return bit;
+        }
+        synchronized (bits) {
+            bit = bits.get(key);
+            if (bit == null) {
+                bit = names.size();
+                names.add(key);
+                bits.put(key, bit);
+            }
+            return bit;
+        }
+    }
+
+    // Mask of a product's concerns; unseen concerns are added to the vocabulary
+    public Mask encode(Collection<String> concerns) {
+        Mask.Builder builder = new Mask.Builder();
+        if (concerns != null) {
+            for (String concern : concerns) {
+                builder.set(bitFor(concern));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Mask of the concerns a filter asks for, or null if one of them has never been seen, in which
+     * case no product can match. Never grows the vocabulary.
+     */
+    public Mask encodeQuery(Collection<String> concerns) {
+        Mask.Builder builder = new Mask.Builder();
+        if (concerns != null) {
+            for (String concern : concerns) {
+                if (normalize(concern) == null) {
+                    continue;
+                }
+                int bit = lookup(concern);
+                if (bit < 0) {
+                    return null;
+                }
+                builder.set(bit);
+            }
+        }
+        return builder.build();
+    }
+
+    static String normalize(String concern) {
+        if (concern == null) {
+            return null;
+        }
+        String key = concern.trim().toLowerCase(Locale.ROOT);
+        return key.isEmpty() ? null : key;
+    }
+
+    /**
+     * Immutable set of concern bits. The first 64 concerns live in a single long; only a vocabulary
+     * larger than that spills into a BitSet.
+     */
+    public static final class Mask {
+        static final Mask EMPTY = new Mask(0L, null);
+
+        private final long low;
+        // Bits 64 and up, shifted down by 64; null when there are none
+        private final BitSet high;
+
+        private Mask(long low, BitSet high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        public boolean isEmpty() {
+            return low == 0L && high == null;
+        }
+
+        public boolean containsAll(Mask other) {
+            if ((low & other.low) != other.low) {
+                return false;
+            }
+            if (other.high == null) {
+                return true;
+            }
+            if (high == null) {
+                return false;
+            }
+            BitSet missing = (BitSet) other.high.clone();
+            missing.andNot(high);
+            return missing.isEmpty();
+        }
+
+        static final class Builder {
+            private long low;
+            private BitSet high;
+
+            void set(int bit) {
+                if (bit < 0) {
+                    return;
+                }
+                if (bit < Long.SIZE) {
+                    low |= 1L << bit;
+                } else {
+                    if (high == null) {
+                        high = new BitSet();
+                    }
+                    high.set(bit - Long.SIZE);
+                }
+            }
+
+            Mask build() {
+                return low == 0L && high == null ? EMPTY : new Mask(low, high);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.skincareapp;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches favorite writes. Toggles are queued per product, so tapping the same heart repeatedly
+ * costs one write for the final state, and the queue is committed in a single transaction on the
+ * disk thread once the flush window closes or the batch reaches its size limit. A batch whose
+ * transaction fails is put back in the queue and retried with exponential backoff, since the
+ * favorites in memory already show its changes. Every toggle carries a sequence number, so a retry
+ * never restores a state that a later toggle, queued or already written, has replaced.
+ */
+public class FavoriteWriteQueue {
+    private static final String TAG = "FavoriteWriteQueue";
+
+    private static final long FLUSH_WINDOW_MS = 300;
+    private static final int MAX_BATCH_SIZE = 32;
+    private static final long RETRY_BASE_MS = 500;
+    private static final long RETRY_MAX_MS = 30_000;
+
+    private static FavoriteWriteQueue instance;
+
+    /**
+     * Queue depth and how long flushes took. flushDelayMillis runs from the oldest queued toggle
+     * to the commit of its batch; transactionMillis is the commit alone.
+     */
+    public static final class Stats {
+        public final int queueDepth;
+        public final long batchesFlushed;
+        public final long writesFlushed;
+        public final long lastFlushDelayMillis;
+        public final long lastTransactionMillis;
+        public final long maxFlushDelayMillis;
+
+        Stats(int queueDepth, long batchesFlushed, long writesFlushed, long lastFlushDelayMillis,
+              long lastTransactionMillis, long maxFlushDelayMillis) {
+            this.queueDepth = queueDepth;
+            this.batchesFlushed = batchesFlushed;
+            this.writesFlushed = writesFlushed;
+            this.lastFlushDelayMillis = lastFlushDelayMillis;
+            this.lastTransactionMillis = lastTransactionMillis;
+            this.maxFlushDelayMillis = maxFlushDelayMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{queueDepth=" + queueDepth +
+                    ", batchesFlushed=" + batchesFlushed +
+                    ", writesFlushed=" + writesFlushed +
+                    ", lastFlushDelayMillis=" + lastFlushDelayMillis +
+                    ", lastTransactionMillis=" + lastTransactionMillis +
+                    ", maxFlushDelayMillis=" + maxFlushDelayMillis +
+                    '}';
+        }
+    }
+
+    private static final class PendingWrite {
+        final Product product;
+        final boolean favorite;
+        final long sequence;
+
+        PendingWrite(Product product, boolean favorite, long sequence) {
+            this.product = product;
+            this.favorite = favorite;
+            this.sequence = sequence;
+        }
+    }
+
+    private final AppDatabase database;
+    private final AppExecutors executors;
+
+    // Guarded by this; product ID -> latest requested state
+    private Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    // Guarded by this; product ID -> sequence of its latest toggle, until that toggle is written
+    private final Map<String, Long> latestSequence = new HashMap<>();
+    private long nextSequence;
+    private long oldestPendingAt;
+    private ScheduledFuture<?> scheduledFlush;
+    // Failed transactions in a row; while non-zero, flushes wait out the backoff
+    private int failedAttempts;
+    private long batchesFlushed;
+    private long writesFlushed;
+    private long lastFlushDelayMillis;
+    private long lastTransactionMillis;
+    private long maxFlushDelayMillis;
+
+    private FavoriteWriteQueue(AppDatabase database, AppExecutors executors) {
+        this.database = database;
+        this.executors = executors;
+    }
+
+    public static synchronized FavoriteWriteQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new FavoriteWriteQueue(AppDatabase.getInstance(context), AppExecutors.getInstance());
+        }
+        return instance;
+    }
+
+    public synchronized void enqueue(Product product, boolean favorite) {
+        if (pending.isEmpty()) {
+            oldestPendingAt = SystemClock.elapsedRealtime();
+        }
+        long sequence = ++nextSequence;
+        latestSequence.put(product.getId(), sequence);
+        pending.put(product.getId(), new PendingWrite(product, favorite, sequence));
+
+        if (pending.size() >= MAX_BATCH_SIZE && failedAttempts == 0) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = executors.scheduler().schedule(this::flush, FLUSH_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Commits whatever is queued now instead of waiting for the window to close
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<String, PendingWrite> batch = pending;
+        long queuedAt = oldestPendingAt;
+        pending = new LinkedHashMap<>();
+        executors.diskIO().execute(() -> write(batch, queuedAt));
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(pending.size(), batchesFlushed, writesFlushed, lastFlushDelayMillis,
+                lastTransactionMillis, maxFlushDelayMillis);
+    }
+
+    private void write(Map<String, PendingWrite> batch, long queuedAt) {
+        long started = SystemClock.elapsedRealtime();
+        List<ProductEntity> inserts = new ArrayList<>();
+        try {
+            ProductDao dao = database.productDao();
+            database.runInTransaction(() -> {
+                for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+                    PendingWrite write = entry.getValue();
+                    // Flip the flag in place; only products never saved before need a full row
+                    if (dao.updateFavorite(entry.getKey(), write.favorite) == 0 && write.favorite) {
+                        ProductEntity entity = new ProductEntity(write.product);
+                        entity.setFavorite(true);
+                        inserts.add(entity);
+                    }
+                }
+                if (!inserts.isEmpty()) {
+                    dao.insertAll(inserts);
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing " + batch.size() + " favorite changes", e);
+            requeue(batch, queuedAt);
+            return;
+        }
+
+        long committed = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            // Written toggles that are still the latest need no tracking any more
+            for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+                latestSequence.remove(entry.getKey(), entry.getValue().sequence);
+            }
+            failedAttempts = 0;
+            batchesFlushed++;
+            writesFlushed += batch.size();
+            lastTransactionMillis = committed - started;
+            lastFlushDelayMillis = committed - queuedAt;
+            maxFlushDelayMillis = Math.max(maxFlushDelayMillis, lastFlushDelayMillis);
+        }
+        Log.d(TAG, "Flushed " + batch.size() + " favorite changes (" + inserts.size() + " new rows) in "
+                + lastTransactionMillis + "ms");
+    }
+
+    // Puts a failed batch back in front of the queue and schedules the retry after the backoff
+    private synchronized void requeue(Map<String, PendingWrite> batch, long queuedAt) {
+        // A toggle made since the batch was taken, whether still queued or in a batch written or
+        // being written meanwhile, is newer than the batch's state for that product
+        Map<String, PendingWrite> retry = new LinkedHashMap<>();
+        for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+            Long latest = latestSequence.get(entry.getKey());
+            if (latest != null && latest == entry.getValue().sequence) {
+                retry.put(entry.getKey(), entry.getValue());
+            }
+        }
+        retry.putAll(pending);
+        pending = retry;
+        oldestPendingAt = queuedAt;
+
+        failedAttempts++;
+        long delay = Math.min(RETRY_MAX_MS, RETRY_BASE_MS << Math.min(failedAttempts - 1, 16));
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = executors.scheduler().schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+        Log.w(TAG, "Retrying " + pending.size() + " favorite changes in " + delay + "ms (attempt " + failedAttempts + ")");
+    }
+}
@@ -17,6 +17,19 @@ public class FavoritesActivity extends AppCompatActivity {
     private ProductAdapter adapter;
     private FavoritesManager favoritesManager;
 
+    // Adding or removing a favorite elsewhere diffs the list, so only that row moves
+    private final FavoritesManager.Listener favoritesListener = new FavoritesManager.Listener() {
+        @Override
+        public void onFavoriteChanged(String productId, boolean favorite) {
+            adapter.submitList(favoritesManager.getFavorites());
+        }
+
+        @Override
+        public void onFavoritesLoaded() {
+            loadFavorites();
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -28,18 +41,27 @@ public class FavoritesActivity extends AppCompatActivity {
             favoritesManager = FavoritesManager.getInstance(); // Use singleton instance
             initializeViews();
             setupRecyclerView();
+            favoritesManager.addListener(favoritesListener);
             loadFavorites();
         } catch (Exception e) {
             Log.e(TAG, "Error initializing FavoritesActivity", e);
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        if (favoritesManager != null) {
+            favoritesManager.removeListener(favoritesListener);
+        }
+        super.onDestroy();
+    }
+
     private void initializeViews() {
         recyclerView = findViewById(R.id.favoritesRecyclerView);
     }
 
     private void setupRecyclerView() {
-        adapter = new ProductAdapter(favoritesManager.getFavorites(), product -> {
+        adapter = new ProductAdapter(null, product -> {
             // Handle favorite item click if needed
             Log.d(TAG, "Clicked on product: " + product.getName());
         });
@@ -49,13 +71,9 @@ public class FavoritesActivity extends AppCompatActivity {
 
     private void loadFavorites() {
         List<Product> favorites = favoritesManager.getFavorites();
-        if (favorites != null && !favorites.isEmpty()) {
-            adapter = new ProductAdapter(favorites, product -> {
-                Log.d(TAG, "Clicked on product: " + product.getName());
-            });
-            recyclerView.setAdapter(adapter);
-            adapter.notifyDataSetChanged();
-        } else {
+        adapter.submitList(favorites);
+        // Saved favorites still loading will arrive through onFavoritesLoaded
+        if (favoritesManager.isLoaded() && (favorites == null || favorites.isEmpty())) {
             Log.d(TAG, "No favorites to display");
             Toast.makeText(this, "No favorites to display", Toast.LENGTH_SHORT).show();
         }
@@ -1,35 +1,174 @@
 package com.example.skincareapp;
 
+import android.content.Context;
+import android.util.Log;
+
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * The user's favorites, persisted in the products table.
+ *
+ * They are read from the database once, on the disk thread, after {@link #initialize}. After that
+ * membership checks hit a concurrent ID set, changes apply in memory immediately and are written
+ * through {@link FavoriteWriteQueue}, and listeners hear about each product that changed.
+ */
 public class FavoritesManager {
+    private static final String TAG = "FavoritesManager";
+
+    public interface Listener {
+        // On the main thread, once per product whose state changed
+        void onFavoriteChanged(String productId, boolean favorite);
+
+        // On the main thread, when the saved favorites have been loaded and merged in
+        void onFavoritesLoaded();
+    }
 
     private static FavoritesManager instance;
-    private List<Product> favorites;
 
-    private FavoritesManager() {
-        favorites = new ArrayList<>();
+    private final Set<String> favoriteIds = ConcurrentHashMap.newKeySet();
+    // Guarded by itself; in the order favorites were added
+    private final Map<String, Product> favorites = new LinkedHashMap<>();
+    // Guarded by favorites; products changed before the saved favorites arrived, which win over them
+    private final Set<String> changedBeforeLoad = new HashSet<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AppExecutors executors;
+    // Null when the manager was used before initialize(), in which case nothing is persisted
+    private final FavoriteWriteQueue writeQueue;
+    private volatile boolean loaded;
+
+    private FavoritesManager(FavoriteWriteQueue writeQueue) {
+        this.executors = AppExecutors.getInstance();
+        this.writeQueue = writeQueue;
+    }
+
+    /**
+     * Creates the manager and starts loading saved favorites. Later calls are ignored.
+     */
+    public static synchronized void initialize(Context context) {
+        if (instance != null) {
+            return;
+        }
+        instance = new FavoritesManager(FavoriteWriteQueue.getInstance(context));
+        instance.load(AppDatabase.getInstance(context).productDao());
     }
 
-    public static FavoritesManager getInstance() {
+    public static synchronized FavoritesManager getInstance() {
         if (instance == null) {
-            instance = new FavoritesManager();
+            Log.w(TAG, "FavoritesManager used before initialize(), favorites will not be saved");
+            instance = new FavoritesManager(null);
+            instance.loaded = true;
         }
         return instance;
     }
 
     public void addToFavorites(Product product) {
-        if (!favorites.contains(product)) {
-            favorites.add(product);
-        }
+        setFavorite(product, true);
     }
 
     public void removeFromFavorites(Product product) {
-        favorites.remove(product);
+        setFavorite(product, false);
+    }
+
+    public void setFavorite(Product product, boolean favorite) {
+        if (product == null) {
+            return;
+        }
+
+        String id = product.getId();
+        synchronized (favorites) {
+            if (favorite == favoriteIds.contains(id)) {
+                return;
+            }
+            if (favorite) {
+                favorites.put(id, product);
+                favoriteIds.add(id);
+            } else {
+                favoriteIds.remove(id);
+                favorites.remove(id);
+            }
+            if (!loaded) {
+                changedBeforeLoad.add(id);
+            }
+        }
+
+        if (writeQueue != null) {
+            writeQueue.enqueue(product, favorite);
+        }
+        executors.mainThread().execute(() -> {
+            for (Listener listener : listeners) {
+                listener.onFavoriteChanged(id, favorite);
+            }
+        });
     }
 
+    public boolean isFavorite(Product product) {
+        return product != null && favoriteIds.contains(product.getId());
+    }
+
+    public boolean isFavorite(String productId) {
+        return productId != null && favoriteIds.contains(productId);
+    }
+
+    // Returns a copy, so callers cannot change favorites without going through this manager
     public List<Product> getFavorites() {
-        return favorites;
+        synchronized (favorites) {
+            return new ArrayList<>(favorites.values());
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void addListener(Listener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void load(ProductDao productDao) {
+        executors.diskRead().execute(() -> {
+            List<ProductEntity> saved;
+            try {
+                saved = productDao.getFavorites();
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading favorites", e);
+                saved = new ArrayList<>();
+            }
+
+            synchronized (favorites) {
+                // Saved favorites go first, in table order, ahead of anything added meanwhile
+                Map<String, Product> merged = new LinkedHashMap<>();
+                for (ProductEntity entity : saved) {
+                    if (!changedBeforeLoad.contains(entity.getId())) {
+                        merged.put(entity.getId(), entity.toProduct());
+                    }
+                }
+                merged.putAll(favorites);
+                favorites.clear();
+                favorites.putAll(merged);
+                favoriteIds.addAll(merged.keySet());
+                changedBeforeLoad.clear();
+                loaded = true;
+            }
+            Log.d(TAG, "Loaded " + saved.size() + " saved favorites");
+
+            executors.mainThread().execute(() -> {
+                for (Listener listener : listeners) {
+                    listener.onFavoritesLoaded();
+                }
+            });
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,222 @@
+package com.example.skincareapp;
+
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * One search sent to several product sources at once. Results are merged into a single list
+ * de-duplicated by source and product ID (IDs are only unique within a source) and streamed to the
+ * callback as each source answers. When the latency budget runs out, whatever has arrived is
+ * reported as the final result, and the sources still outstanding are marked as timed out and
+ * cancelled.
+ */
+public class FederatedSearch {
+    private static final String TAG = "FederatedSearch";
+
+    public interface Source {
+        /**
+         * Must eventually call exactly one of the two consumers, on any thread, unless the signal is
+         * cancelled first; then the source should abandon its work and may report nothing.
+         */
+        void search(String query, CancellationSignal signal, Consumer<List<Product>> onProducts,
+                    Consumer<String> onError);
+    }
+
+    public interface Callback {
+        // Merged results so far; complete is true on the last call only
+        void onResults(List<Product> products, List<SourceStats> stats, boolean complete);
+        // Every source failed or timed out without returning anything
+        void onError(String errorMessage, List<SourceStats> stats);
+    }
+
+    public enum SourceState {
+        PENDING,
+        SUCCEEDED,
+        FAILED,
+        TIMED_OUT
+    }
+
+    /**
+     * How one source fared. elapsedMillis is the time to its answer, or to the cut-off for a source
+     * that timed out.
+     */
+    public static final class SourceStats {
+        public final String source;
+        public final SourceState state;
+        public final long elapsedMillis;
+        public final int resultCount;
+        public final String error;
+
+        SourceStats(String source, SourceState state, long elapsedMillis, int resultCount, String error) {
+            this.source = source;
+            this.state = state;
+            this.elapsedMillis = elapsedMillis;
+            this.resultCount = resultCount;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return source + "{" + state +
+                    ", " + elapsedMillis + "ms" +
+                    ", results=" + resultCount +
+                    (error != null ? ", error=" + error : "") +
+                    '}';
+        }
+    }
+
+    private final String query;
+    private final long latencyBudgetMs;
+    private final Map<String, Source> sources;
+    private final Callback callback;
+    private final AppExecutors executors;
+
+    // Guarded by merged; posting to the main thread under the lock keeps emissions in order.
+    // Keyed by source and product ID
+    private final Map<String, Product> merged = new LinkedHashMap<>();
+    private final Map<String, SourceStats> stats = new LinkedHashMap<>();
+    private final Map<String, CancellationSignal> signals = new LinkedHashMap<>();
+    private long startedAt;
+    private int remaining;
+    private boolean finished;
+    private ScheduledFuture<?> deadline;
+
+    FederatedSearch(String query, long latencyBudgetMs, Map<String, Source> sources, Callback callback,
+                    AppExecutors executors) {
+        this.query = query;
+        this.latencyBudgetMs = Math.max(0, latencyBudgetMs);
+        this.sources = new LinkedHashMap<>(sources);
+        this.callback = callback;
+        this.executors = executors;
+    }
+
+    void start() {
+        synchronized (merged) {
+            startedAt = SystemClock.elapsedRealtime();
+            remaining = sources.size();
+            for (String name : sources.keySet()) {
+                stats.put(name, new SourceStats(name, SourceState.PENDING, 0, 0, null));
+                signals.put(name, new CancellationSignal());
+            }
+            if (sources.isEmpty()) {
+                finish(false);
+                return;
+            }
+            deadline = executors.scheduler().schedule(() -> {
+                synchronized (merged) {
+                    finish(true);
+                }
+            }, latencyBudgetMs, TimeUnit.MILLISECONDS);
+        }
+
+        for (Map.Entry<String, Source> entry : sources.entrySet()) {
+            String name = entry.getKey();
+            try {
+                entry.getValue().search(query, signals.get(name),
+                        products -> executors.compute().execute(() -> sourceSucceeded(name, products)),
+                        error -> sourceFailed(name, error));
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting source " + name, e);
+                sourceFailed(name, e.getMessage());
+            }
+        }
+    }
+
+    private void sourceSucceeded(String name, List<Product> products) {
+        synchronized (merged) {
+            if (finished || !markDone(name, SourceState.SUCCEEDED, products.size(), null)) {
+                return;
+            }
+            for (Product product : products) {
+                if (product != null) {
+                    merged.putIfAbsent(name + ':' + product.getId(), product);
+                }
+            }
+            Log.d(TAG, name + " returned " + products.size() + " products, " + merged.size() + " merged");
+
+            if (remaining == 0) {
+                finish(false);
+            } else {
+                emit(false);
+            }
+        }
+    }
+
+    private void sourceFailed(String name, String error) {
+        synchronized (merged) {
+            if (finished || !markDone(name, SourceState.FAILED, 0, error)) {
+                return;
+            }
+            Log.w(TAG, name + " failed: " + error);
+            if (remaining == 0) {
+                finish(false);
+            }
+        }
+    }
+
+    // Records a source's outcome once; false if it had already been recorded
+    private boolean markDone(String name, SourceState state, int resultCount, String error) {
+        SourceStats current = stats.get(name);
+        if (current == null || current.state != SourceState.PENDING) {
+            return false;
+        }
+        stats.put(name, new SourceStats(name, state, SystemClock.elapsedRealtime() - startedAt, resultCount, error));
+        remaining--;
+        return true;
+    }
+
+    private void finish(boolean budgetExceeded) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (deadline != null) {
+            deadline.cancel(false);
+        }
+
+        if (budgetExceeded) {
+            long elapsed = SystemClock.elapsedRealtime() - startedAt;
+            for (Map.Entry<String, SourceStats> entry : stats.entrySet()) {
+                if (entry.getValue().state == SourceState.PENDING) {
+                    entry.setValue(new SourceStats(entry.getKey(), SourceState.TIMED_OUT, elapsed, 0, null));
+                    // Abandons its request, which is cancelled unless another search shares it
+                    signals.get(entry.getKey()).cancel();
+                }
+            }
+            Log.w(TAG, "Latency budget of " + latencyBudgetMs + "ms exceeded, returning partial results");
+        }
+        Log.d(TAG, "Federated search \"" + query + "\": " + stats.values());
+
+        boolean anySucceeded = false;
+        for (SourceStats sourceStats : stats.values()) {
+            anySucceeded |= sourceStats.state == SourceState.SUCCEEDED;
+        }
+        if (!anySucceeded && !sources.isEmpty()) {
+            List<SourceStats> snapshot = statsSnapshot();
+            executors.mainThread().execute(() -> callback.onError("No product source answered", snapshot));
+            return;
+        }
+        emit(true);
+    }
+
+    // Called with the lock held
+    private void emit(boolean complete) {
+        List<Product> products = Collections.unmodifiableList(new ArrayList<>(merged.values()));
+        List<SourceStats> snapshot = statsSnapshot();
+        executors.mainThread().execute(() -> callback.onResults(products, snapshot, complete));
+    }
+
+    private List<SourceStats> statsSnapshot() {
+        return Collections.unmodifiableList(new ArrayList<>(stats.values()));
+    }
+}
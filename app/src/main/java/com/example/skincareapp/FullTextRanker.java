@@ -0,0 +1,105 @@
+package com.example.skincareapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds FTS4 MATCH expressions from user input and ranks the hits.
+ *
+ * SQLite's FTS4 has no built-in ranking function, so hits are scored here from matchinfo('pcnx'):
+ * a BM25-style term weight per query term and column, with name matches counting more than brand
+ * matches and brand more than description.
+ */
+final class FullTextRanker {
+    // Column order of products_fts: name, brand, description
+    private static final double[] COLUMN_WEIGHTS = {3.0, 2.0, 1.0};
+    private static final double K1 = 1.2;
+
+    private FullTextRanker() {
+    }
+
+    /**
+     * Turns free text into an FTS4 query where every word must match as a prefix, or returns null
+     * when nothing searchable is left. Quotes and operators are stripped so user input can never
+     * form invalid syntax.
+     */
+    static String toMatchQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        StringBuilder match = new StringBuilder();
+        for (String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            // Bare operators would be read as syntax, not words
+            if (word.isEmpty() || word.equals("and") || word.equals("or") || word.equals("not") || word.equals("near")) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    // Highest score first; ties keep the database order
+    static List<ProductEntity> rank(List<ProductMatch> matches, int limit) {
+        if (matches == null || matches.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        double[] scores = new double[matches.size()];
+        Integer[] order = new Integer[matches.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = score(matches.get(i).matchInfo);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        int count = limit > 0 ? Math.min(limit, order.length) : order.length;
+        List<ProductEntity> ranked = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ranked.add(matches.get(order[i]).product);
+        }
+        return ranked;
+    }
+
+    static double score(byte[] matchInfo) {
+        if (matchInfo == null || matchInfo.length < 12) {
+            return 0;
+        }
+
+        // matchinfo is an array of native-order 32-bit unsigned integers
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+        long rows = buffer.getInt(8) & 0xffffffffL;
+        if (buffer.capacity() < 12 + phrases * columns * 12) {
+            return 0;
+        }
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                // x: hits in this row, hits in all rows, rows with at least one hit
+                int offset = 12 + (phrase * columns + column) * 12;
+                long hitsHere = buffer.getInt(offset) & 0xffffffffL;
+                if (hitsHere == 0) {
+                    continue;
+                }
+                long rowsWithHits = buffer.getInt(offset + 8) & 0xffffffffL;
+
+                double idf = Math.log(1 + (rows - rowsWithHits + 0.5) / (rowsWithHits + 0.5));
+                double tf = hitsHere * (K1 + 1) / (hitsHere + K1);
+                double weight = column < COLUMN_WEIGHTS.length ? COLUMN_WEIGHTS[column] : 1.0;
+                score += weight * idf * tf;
+            }
+        }
+        return score;
+    }
+}
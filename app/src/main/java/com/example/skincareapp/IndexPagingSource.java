@@ -0,0 +1,35 @@
+package com.example.skincareapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages the result of a {@link ProductSearchIndex} search. The matches are held as ordinals, so a
+ * result list costs four bytes per product until a page of it is read.
+ */
+class IndexPagingSource implements ProductPagingSource {
+    private final ProductSearchIndex index;
+    // Ascending ordinals, or null for every product in the index
+    private final int[] ordinals;
+
+    IndexPagingSource(ProductSearchIndex index, int[] ordinals) {
+        this.index = index;
+        this.ordinals = ordinals;
+    }
+
+    @Override
+    public int count() {
+        return ordinals != null ? ordinals.length : index.size();
+    }
+
+    // Ordinals are positional, so no key is needed to seek
+    @Override
+    public Page load(int position, PageKey after, int loadSize) {
+        int end = Math.min(count(), position + loadSize);
+        List<Product> products = new ArrayList<>(Math.max(0, end - position));
+        for (int i = position; i < end; i++) {
+            products.add(index.get(ordinals != null ? ordinals[i] : i));
+        }
+        return new Page(products, null);
+    }
+}
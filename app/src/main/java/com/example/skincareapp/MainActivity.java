@@ -3,13 +3,19 @@ package com.example.skincareapp;
 import android.annotation.SuppressLint;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.view.View;
+import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
@@ -19,25 +25,47 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.slider.RangeSlider;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
+    // How long the search button waits on the slower product source before showing what it has
+    private static final long FEDERATED_BUDGET_SECONDS = 3;
 
     private ProductRepository repository;
     private RecyclerView recyclerView;
     private ProductAdapter adapter;
 
-    private List<Product> currentProducts = new ArrayList<>();
 
     private EditText searchInput;
     private Spinner categorySpinner;
     private Spinner skinConcernSpinner;
     private RangeSlider priceRangeSlider;
+    private TextView minPriceText;
+    private TextView maxPriceText;
     private Button searchButton;
     private Button clearFiltersButton;
+    // Spinner entries are the resource arrays with live counts appended
+    private ArrayAdapter<String> categoryAdapter;
+    private ArrayAdapter<String> concernAdapter;
+    private int lastCategoryPosition;
+    // Cancels the facet count still running when a newer one starts
+    private CancellationSignal facetSignal;
+    // Cancels the Open Beauty Facts fallback still loading when the query changes
+    private CancellationSignal openBeautyFactsSignal;
 
     private boolean isLoading = false;
+    // Bumped by every search, so the initial load cannot overwrite a search typed while it ran
+    private int searchGeneration;
+    private TypeaheadSearch typeahead;
+    // Filters the current text and category matches as the price slider moves; null while stale
+    private PriceRangeFilter priceFilter;
+    private PriceRangeFilter.Window shownPriceWindow;
+    // The list the slider updates in place, once it has been moved; null until then
+    private PriceRangeFilter.Selection priceSelection;
+    private int priceFilterGeneration;
     private Handler mainHandler;
 
     @SuppressLint("MissingInflatedId")
@@ -80,6 +108,8 @@ public class MainActivity extends AppCompatActivity {
             categorySpinner = findViewById(R.id.categorySpinner);
             skinConcernSpinner = findViewById(R.id.skinConcernSpinner);
             priceRangeSlider = findViewById(R.id.priceRangeSlider);
+            minPriceText = findViewById(R.id.minPriceText);
+            maxPriceText = findViewById(R.id.maxPriceText);
             searchButton = findViewById(R.id.searchButton);
             clearFiltersButton = findViewById(R.id.clearFiltersButton);
 
@@ -95,7 +125,7 @@ public class MainActivity extends AppCompatActivity {
 
     private void setupRecyclerView() {
         try {
-            adapter = new ProductAdapter(currentProducts, product -> {
+            adapter = new ProductAdapter(null, product -> {
                 try {
                     if (repository != null && product != null) {
                         repository.toggleFavorite(product, true);
@@ -120,18 +150,33 @@ public class MainActivity extends AppCompatActivity {
 
     private void setupSpinners() {
         try {
-            // Category spinner setup
+            // Category spinner setup; a mutable copy of the entries so counts can be added later
             if (categorySpinner != null) {
-                ArrayAdapter<CharSequence> categoryAdapter = ArrayAdapter.createFromResource(
-                        this, R.array.product_categories, android.R.layout.simple_spinner_item);
+                categoryAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item,
+                        new ArrayList<>(Arrays.asList(getResources().getStringArray(R.array.product_categories))));
                 categoryAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
                 categorySpinner.setAdapter(categoryAdapter);
+                categorySpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+                    @Override
+                    public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                        // The other facets' counts depend on the category
+                        if (position != lastCategoryPosition) {
+                            lastCategoryPosition = position;
+                            refreshFacets();
+                            refreshPriceFilter();
+                        }
+                    }
+
+                    @Override
+                    public void onNothingSelected(AdapterView<?> parent) {
+                    }
+                });
             }
 
             // Skin concern spinner setup
             if (skinConcernSpinner != null) {
-                ArrayAdapter<CharSequence> concernAdapter = ArrayAdapter.createFromResource(
-                        this, R.array.skin_concerns, android.R.layout.simple_spinner_item);
+                concernAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item,
+                        new ArrayList<>(Arrays.asList(getResources().getStringArray(R.array.skin_concerns))));
                 concernAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
                 skinConcernSpinner.setAdapter(concernAdapter);
             }
@@ -148,6 +193,23 @@ public class MainActivity extends AppCompatActivity {
                 priceRangeSlider.setValueFrom(initialValues[0]);
                 priceRangeSlider.setValueTo(initialValues[1]);
                 priceRangeSlider.setValues(initialValues[0], initialValues[1]);
+
+                // Filter live while dragging; the other counts follow once the thumb is let go
+                priceRangeSlider.addOnChangeListener((slider, value, fromUser) -> {
+                    if (fromUser) {
+                        onPriceRangeChanged();
+                    }
+                });
+                priceRangeSlider.addOnSliderTouchListener(new RangeSlider.OnSliderTouchListener() {
+                    @Override
+                    public void onStartTrackingTouch(RangeSlider slider) {
+                    }
+
+                    @Override
+                    public void onStopTrackingTouch(RangeSlider slider) {
+                        refreshFacets();
+                    }
+                });
             }
         } catch (Exception e) {
             Log.e(TAG, "Error setting up price slider", e);
@@ -173,6 +235,7 @@ public class MainActivity extends AppCompatActivity {
             if (searchButton != null) {
                 searchButton.setOnClickListener(v -> performSearch());
             }
+            setupTypeahead();
             if (clearFiltersButton != null) {
                 clearFiltersButton.setOnClickListener(v -> clearAllFilters());
             }
@@ -181,11 +244,76 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void setupTypeahead() {
+        typeahead = repository.newTypeaheadSearch(
+                new TypeaheadSearch.Options().setDebounce(150, TimeUnit.MILLISECONDS),
+                new TypeaheadSearch.Callback() {
+                    @Override
+                    public void onResults(String query, PagedProductList products, boolean narrowed) {
+                        // Typed results are not reported as empty; the search button does that
+                        hideLoadingState();
+                        if (products.size() == 0 && !query.isEmpty()) {
+                            products.close();
+                            searchOpenBeautyFacts(query);
+                            return;
+                        }
+                        showPagedProducts(products);
+                        refreshFacets();
+                        refreshPriceFilter();
+                    }
+
+                    @Override
+                    public void onError(String query, String errorMessage) {
+                        if (isLoading) {
+                            hideLoadingState();
+                            showErrorMessage(errorMessage);
+                        } else {
+                            Log.w(TAG, "Typeahead search failed: " + errorMessage);
+                        }
+                    }
+                });
+
+        if (searchInput == null) {
+            return;
+        }
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                onSearchTextChanged(s.toString());
+            }
+        });
+    }
+
+    private void onSearchTextChanged(String query) {
+        try {
+            searchGeneration++;
+            cancelOpenBeautyFactsSearch();
+            // The prepared matches are for the old text; the results for the new text replace them
+            dropPriceFilter();
+            List<Float> values = priceRangeSlider != null ? priceRangeSlider.getValues() : List.of(5.0f, 200.0f);
+            typeahead.onQueryChanged(query, getSelectedCategory(), (double) values.get(0), (double) values.get(1));
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting typeahead search", e);
+        }
+    }
+
     private void clearAllFilters() {
         try {
             if (searchInput != null) {
                 searchInput.setText("");
             }
+            if (typeahead != null) {
+                // The initial load below covers the cleared query
+                typeahead.cancel();
+            }
             if (categorySpinner != null) {
                 categorySpinner.setSelection(0); // "All Categories"
             }
@@ -194,8 +322,8 @@ public class MainActivity extends AppCompatActivity {
             }
 
             if (priceRangeSlider != null) {
-                float[] initialValues = getInitialSliderValues();
-                priceRangeSlider.setValues(initialValues[0], initialValues[1]);
+                // The whole range the slider currently allows, which the facets fit to the catalog
+                priceRangeSlider.setValues(priceRangeSlider.getValueFrom(), priceRangeSlider.getValueTo());
             }
 
             loadInitialProducts();
@@ -211,6 +339,7 @@ public class MainActivity extends AppCompatActivity {
         }
 
         showLoadingState();
+        int generation = ++searchGeneration;
 
         // Add timeout mechanism
         mainHandler.postDelayed(() -> {
@@ -220,18 +349,31 @@ public class MainActivity extends AppCompatActivity {
             }
         }, 30000); // 30 second timeout
 
+        // First launch: show skincare products as the catalog streams in
+        if (!repository.hasLocalCatalog()) {
+            streamInitialProducts(generation);
+            return;
+        }
+
         // Load all products and filter for skincare
-        repository.searchProducts("", null, null, null, new ProductRepository.ProductCallback() {
+        repository.searchProductsPaged("", null, null, null, new ProductRepository.PagedCallback() {
             @Override
-            public void onProductsLoaded(List<Product> products) {
+            public void onPagedListReady(PagedProductList products) {
                 runOnUiThread(() -> {
+                    if (generation != searchGeneration) {
+                        products.close();
+                        return;
+                    }
                     hideLoadingState();
-                    updateProductList(products);
+                    showPagedProducts(products);
+                    refreshFacets();
 
-                    if (products.isEmpty()) {
+                    if (products.size() == 0) {
                         showToast(getString(R.string.trying_specific_brands));
                         // Try searching by popular skincare brands
                         searchSkincareByBrands();
+                    } else {
+                        refreshPriceFilter();
                     }
                 });
             }
@@ -239,6 +381,9 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onError(String errorMessage) {
                 runOnUiThread(() -> {
+                    if (generation != searchGeneration) {
+                        return;
+                    }
                     hideLoadingState();
                     showErrorMessage(errorMessage);
                     // Fallback to searching by brands
@@ -248,35 +393,100 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Shows skincare products as the catalog streams in. A search started meanwhile only takes over
+     * the screen: the download keeps running, and catalog searches wait for it rather than
+     * downloading the catalog a second time.
+     */
+    private void streamInitialProducts(int generation) {
+        List<Product> streamed = new ArrayList<>();
+        repository.streamProducts("", null, null, null, null, new ProductRepository.StreamCallback() {
+            @Override
+            public void onBatch(List<Product> batch) {
+                runOnUiThread(() -> {
+                    if (generation != searchGeneration) {
+                        return;
+                    }
+                    // The first batch is enough to show, so the timeout no longer applies
+                    hideLoadingState();
+                    // Nothing is prepared for a list still growing; the filter follows on completion
+                    dropPriceFilter();
+                    streamed.addAll(batch);
+                    updateProductList(streamed);
+                });
+            }
+
+            @Override
+            public void onComplete(int matched) {
+                runOnUiThread(() -> {
+                    if (generation != searchGeneration) {
+                        return;
+                    }
+                    hideLoadingState();
+                    // The streamed catalog is now local, so counting it needs no second download
+                    refreshFacets();
+                    if (matched == 0) {
+                        showToast(getString(R.string.trying_specific_brands));
+                        searchSkincareByBrands();
+                    } else {
+                        refreshPriceFilter();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                runOnUiThread(() -> {
+                    if (generation != searchGeneration) {
+                        return;
+                    }
+                    hideLoadingState();
+                    showErrorMessage(errorMessage);
+                    // Keep whatever streamed in before the failure
+                    if (streamed.isEmpty()) {
+                        searchSkincareByBrands();
+                    } else {
+                        refreshPriceFilter();
+                    }
+                });
+            }
+        });
+    }
+
+    // Fallback for an initial load that found nothing; part of that load's search generation
     private void searchSkincareByBrands() {
         if (repository == null) {
             return;
         }
 
+        int generation = searchGeneration;
+        // The brand results replace the list; each update re-prepares the filter below
+        dropPriceFilter();
         // Search by brands known to have skincare products
-        String[] skincareBrands = {"clinique", "maybelline", "revlon", "l'oreal", "nyx"};
-
-        for (String brand : skincareBrands) {
-            repository.searchProductsByBrand(brand, new ProductRepository.ProductCallback() {
-                @Override
-                public void onProductsLoaded(List<Product> products) {
-                    runOnUiThread(() -> {
-                        if (!products.isEmpty()) {
-                            currentProducts.addAll(products);
-                            if (adapter != null) {
-                                adapter.notifyDataSetChanged();
-                            }
-                        }
-                    });
-                }
+        List<String> skincareBrands = Arrays.asList("clinique", "maybelline", "revlon", "l'oreal", "nyx");
+        BrandFanOut.Options options = new BrandFanOut.Options()
+                .setMaxConcurrency(3)
+                .setLatencyBudget(10, TimeUnit.SECONDS)
+                .setIncremental(true, 250);
 
-                @Override
-                public void onError(String errorMessage) {
-                    // Ignore individual brand errors
-                    Log.w(TAG, "Error loading brand " + brand + ": " + errorMessage);
-                }
-            });
-        }
+        repository.searchProductsByBrands(skincareBrands, options, new ProductRepository.ProductCallback() {
+            @Override
+            public void onProductsLoaded(List<Product> products) {
+                // Each update carries every brand merged so far, without duplicates
+                runOnUiThread(() -> {
+                    if (generation != searchGeneration || products.isEmpty()) {
+                        return;
+                    }
+                    updateProductList(products);
+                    refreshPriceFilter();
+                });
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                Log.w(TAG, "Error loading skincare brands: " + errorMessage);
+            }
+        });
     }
 
     private void performSearch() {
@@ -302,28 +512,12 @@ public class MainActivity extends AppCompatActivity {
                 }
             }, 30000); // 30 second timeout
 
-            repository.searchProducts(query, selectedCategory, minPrice, maxPrice,
-                    new ProductRepository.ProductCallback() {
-                        @Override
-                        public void onProductsLoaded(List<Product> products) {
-                            runOnUiThread(() -> {
-                                hideLoadingState();
-                                updateProductList(products);
-
-                                if (products.isEmpty()) {
-                                    showEmptyState();
-                                }
-                            });
-                        }
+            if (query.isEmpty()) {
+                searchByFilters(new UserFilter(selectedCategory, minPrice, maxPrice, getSelectedConcerns()));
+                return;
+            }
 
-                        @Override
-                        public void onError(String errorMessage) {
-                            runOnUiThread(() -> {
-                                hideLoadingState();
-                                showErrorMessage(errorMessage);
-                            });
-                        }
-                    });
+            searchAllSources(query, selectedCategory, minPrice, maxPrice);
         } catch (Exception e) {
             Log.e(TAG, "Error performing search", e);
             hideLoadingState();
@@ -331,13 +525,138 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Shows Open Beauty Facts matches for a query the makeup catalog has nothing for. The list is
+     * paged: binding rows as the user scrolls loads the next pages ahead of them.
+     */
+    private void searchOpenBeautyFacts(String query) {
+        int generation = searchGeneration;
+        cancelOpenBeautyFactsSearch();
+        openBeautyFactsSignal = new CancellationSignal();
+        repository.searchOpenBeautyFactsPaged(query, openBeautyFactsSignal, new ProductRepository.PagedCallback() {
+            @Override
+            public void onPagedListReady(PagedProductList products) {
+                if (generation != searchGeneration) {
+                    products.close();
+                    return;
+                }
+                showPagedProducts(products);
+                refreshPriceFilter();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                if (generation == searchGeneration) {
+                    Log.w(TAG, "Open Beauty Facts search failed: " + errorMessage);
+                }
+            }
+        });
+    }
+
+    private void cancelOpenBeautyFactsSearch() {
+        if (openBeautyFactsSignal != null) {
+            openBeautyFactsSignal.cancel();
+            openBeautyFactsSignal = null;
+        }
+    }
+
+    /**
+     * The search button asks the makeup catalog and Open Beauty Facts at once. Results show as each
+     * source answers, and a source slower than the budget is dropped, so the screen never waits on it.
+     */
+    private void searchAllSources(String query, String category, double minPrice, double maxPrice) {
+        // Cancels, and is never overwritten by, a typeahead search for older text
+        typeahead.cancel();
+        cancelOpenBeautyFactsSearch();
+        int generation = ++searchGeneration;
+        repository.searchFederated(query, category, minPrice, maxPrice, FEDERATED_BUDGET_SECONDS, TimeUnit.SECONDS,
+                new FederatedSearch.Callback() {
+                    @Override
+                    public void onResults(List<Product> products, List<FederatedSearch.SourceStats> stats,
+                                          boolean complete) {
+                        if (generation != searchGeneration) {
+                            return;
+                        }
+                        hideLoadingState();
+                        updateProductList(products);
+                        if (!complete) {
+                            // Nothing is prepared for a list still growing; the filter follows on completion
+                            dropPriceFilter();
+                        } else if (products.isEmpty()) {
+                            dropPriceFilter();
+                            showEmptyState();
+                        } else {
+                            refreshPriceFilter();
+                        }
+                    }
+
+                    @Override
+                    public void onError(String errorMessage, List<FederatedSearch.SourceStats> stats) {
+                        if (generation != searchGeneration) {
+                            return;
+                        }
+                        Log.w(TAG, "Federated search failed: " + stats);
+                        hideLoadingState();
+                        showErrorMessage(errorMessage);
+                    }
+                });
+    }
+
+    // A search with no text is a pure filter search, which also applies the selected skin concern
+    private void searchByFilters(UserFilter filter) {
+        typeahead.cancel();
+        cancelOpenBeautyFactsSearch();
+        int generation = ++searchGeneration;
+        repository.searchProducts(filter, new ProductRepository.ProductCallback() {
+            @Override
+            public void onProductsLoaded(List<Product> products) {
+                if (generation != searchGeneration) {
+                    return;
+                }
+                hideLoadingState();
+                updateProductList(products);
+                refreshFacets();
+                refreshPriceFilter();
+                if (products.isEmpty()) {
+                    showEmptyState();
+                }
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                if (generation != searchGeneration) {
+                    return;
+                }
+                hideLoadingState();
+                showErrorMessage(errorMessage);
+            }
+        });
+    }
+
+    private List<String> getSelectedConcerns() {
+        try {
+            if (skinConcernSpinner != null) {
+                // By position, like the category, since the entries shown carry counts
+                int position = skinConcernSpinner.getSelectedItemPosition();
+                // Entries are labels; products carry the concern keys they stand for
+                String[] concerns = getResources().getStringArray(R.array.skin_concern_keys);
+                // Null for "All Concerns"
+                return position <= 0 || position >= concerns.length ? null : List.of(concerns[position]);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting selected concern", e);
+        }
+        return null;
+    }
+
     private String getSelectedCategory() {
         try {
             if (categorySpinner != null) {
-                String selected = categorySpinner.getSelectedItem().toString();
+                // By position, since the entries shown carry counts
+                int position = categorySpinner.getSelectedItemPosition();
                 String[] categories = getResources().getStringArray(R.array.product_categories);
                 // Return null for "All Categories" to indicate no filtering
-                return selected.equals(categories[0]) ? null : selected.toLowerCase();
+                return position <= 0 || position >= categories.length ? null : categories[position].toLowerCase();
             }
         } catch (Exception e) {
             Log.e(TAG, "Error getting selected category", e);
@@ -345,14 +664,190 @@ public class MainActivity extends AppCompatActivity {
         return null;
     }
 
+    // Recounts the filter facets for the current query and filters; cheap, the matches are cached
+    private void refreshFacets() {
+        if (repository == null) {
+            return;
+        }
+
+        try {
+            String query = searchInput != null ? searchInput.getText().toString().trim() : "";
+            List<Float> values = priceRangeSlider != null ? priceRangeSlider.getValues() : List.of(5.0f, 200.0f);
+            if (facetSignal != null) {
+                facetSignal.cancel();
+            }
+            facetSignal = new CancellationSignal();
+            repository.computeFacets(query, getSelectedCategory(), (double) values.get(0), (double) values.get(1),
+                    getSelectedConcerns(),
+                    facetSignal, new ProductRepository.FacetCallback() {
+                        @Override
+                        public void onFacets(ProductFacets facets) {
+                            showFacetCounts(facets);
+                            showPriceBounds(facets);
+                        }
+
+                        @Override
+                        public void onError(String errorMessage) {
+                            Log.w(TAG, "Error computing facets: " + errorMessage);
+                        }
+                    });
+        } catch (Exception e) {
+            Log.e(TAG, "Error refreshing facets", e);
+        }
+    }
+
+    // Prepares the current text and category matches so the slider can filter them live
+    private void refreshPriceFilter() {
+        dropPriceFilter();
+        if (repository == null || priceRangeSlider == null) {
+            return;
+        }
+
+        try {
+            int generation = priceFilterGeneration;
+            String query = searchInput != null ? searchInput.getText().toString().trim() : "";
+            repository.preparePriceFilter(query, getSelectedCategory(), getSelectedConcerns(),
+                    new ProductRepository.PriceFilterCallback() {
+                        @Override
+                        public void onPriceFilterReady(PriceRangeFilter filter) {
+                            if (generation != priceFilterGeneration) {
+                                return;
+                            }
+                            priceFilter = filter;
+                            // Unknown, so the first move of the slider shows the filter's products
+                            shownPriceWindow = null;
+                        }
+
+                        @Override
+                        public void onError(String errorMessage) {
+                            Log.w(TAG, "Error preparing price filter: " + errorMessage);
+                        }
+                    });
+        } catch (Exception e) {
+            Log.e(TAG, "Error preparing price filter", e);
+        }
+    }
+
+    /**
+     * Two binary searches per slider move, and nothing more when the products stay the same. The
+     * first move shows a selection of the prepared matches; later moves update it in place, so
+     * only the rows entering or leaving the range are touched.
+     */
+    private void onPriceRangeChanged() {
+        if (priceFilter == null || isLoading) {
+            return;
+        }
+
+        try {
+            List<Float> values = priceRangeSlider.getValues();
+            PriceRangeFilter.Window window = priceFilter.window((double) values.get(0), (double) values.get(1));
+            if (window.sameProducts(shownPriceWindow)) {
+                return;
+            }
+            shownPriceWindow = window;
+            if (priceSelection != null) {
+                priceSelection.setWindow(window);
+                return;
+            }
+
+            // Supersedes any load still running for the previous price range
+            int generation = ++searchGeneration;
+            priceSelection = priceFilter.select(window, selection -> {
+                if (generation != searchGeneration || selection != priceSelection) {
+                    selection.close();
+                    return;
+                }
+                if (adapter != null) {
+                    adapter.submitSelection(selection);
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error filtering by price", e);
+        }
+    }
+
+    // For results not built from the prepared matches: a slider move must not replace them
+    private void dropPriceFilter() {
+        priceFilter = null;
+        priceFilterGeneration++;
+        if (priceSelection != null) {
+            priceSelection.close();
+            priceSelection = null;
+        }
+    }
+
+    private void showFacetCounts(ProductFacets facets) {
+        if (categoryAdapter != null) {
+            String[] categories = getResources().getStringArray(R.array.product_categories);
+            List<String> labels = new ArrayList<>(categories.length);
+            for (int i = 0; i < categories.length; i++) {
+                int count = facets.countForCategory(i == 0 ? null : categories[i]);
+                labels.add(getString(R.string.facet_label, categories[i], count));
+            }
+            replaceEntries(categoryAdapter, labels);
+        }
+
+        if (concernAdapter != null) {
+            String[] concerns = getResources().getStringArray(R.array.skin_concerns);
+            // Counted by the same keys getSelectedConcerns filters on
+            String[] keys = getResources().getStringArray(R.array.skin_concern_keys);
+            List<String> labels = new ArrayList<>(concerns.length);
+            for (int i = 0; i < concerns.length; i++) {
+                int count = i == 0 ? facets.total : facets.countForConcern(keys[i]);
+                labels.add(getString(R.string.facet_label, concerns[i], count));
+            }
+            replaceEntries(concernAdapter, labels);
+        }
+    }
+
+    /**
+     * Fits the slider to the prices the current text and category can give. Thumbs are only pulled
+     * in to the new ends, which never changes the products inside the range.
+     */
+    private void showPriceBounds(ProductFacets facets) {
+        if (priceRangeSlider == null || !facets.hasPrices()) {
+            return;
+        }
+
+        float from = (float) Math.floor(facets.getMinPrice());
+        float to = Math.max(from + 1, (float) Math.ceil(facets.getMaxPrice()));
+        List<Float> values = priceRangeSlider.getValues();
+        float low = Math.min(Math.max(values.get(0), from), to);
+        float high = Math.min(Math.max(values.get(1), low), to);
+        priceRangeSlider.setValueFrom(from);
+        priceRangeSlider.setValueTo(to);
+        priceRangeSlider.setValues(low, high);
+
+        if (minPriceText != null) {
+            minPriceText.setText(getString(R.string.product_price_format, from));
+        }
+        if (maxPriceText != null) {
+            maxPriceText.setText(getString(R.string.product_price_format, to));
+        }
+    }
+
+    // Swaps the entries in place, so the spinner keeps its selected position
+    private static void replaceEntries(ArrayAdapter<String> adapter, List<String> labels) {
+        adapter.setNotifyOnChange(false);
+        adapter.clear();
+        adapter.addAll(labels);
+        adapter.notifyDataSetChanged();
+    }
+
     private void updateProductList(List<Product> products) {
         try {
-            currentProducts.clear();
-            if (products != null) {
-                currentProducts.addAll(products);
+            if (adapter != null) {
+                adapter.submitList(products);
             }
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating product list", e);
+        }
+    }
+
+    private void showPagedProducts(PagedProductList products) {
+        try {
             if (adapter != null) {
-                adapter.notifyDataSetChanged();
+                adapter.submitPagedList(products);
             }
         } catch (Exception e) {
             Log.e(TAG, "Error updating product list", e);
@@ -398,5 +893,8 @@ public class MainActivity extends AppCompatActivity {
         if (mainHandler != null) {
             mainHandler.removeCallbacksAndMessages(null);
         }
+        if (typeahead != null) {
+            typeahead.cancel();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package com.example.skincareapp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Placeholder values for products the API returns without them: a $5-$50 price, a 3-5 star
+ * rating and one to three skin concerns. Values are drawn from a generator seeded with a hash of
+ * the stable product ID, so a product looks the same on every search and after every restart.
+ */
+public class MockProductEnricher implements ProductEnrichment.Enricher {
+    private static final String ID = "mock-1";
+    private static final List<String> DEFAULT_CONCERNS =
+            Arrays.asList("acne", "dryness", "aging", "sensitivity", "oiliness", "dark spots");
+
+    private final List<String> possibleConcerns;
+
+    public MockProductEnricher() {
+        this(DEFAULT_CONCERNS);
+    }
+
+    public MockProductEnricher(List<String> possibleConcerns) {
+        this.possibleConcerns = possibleConcerns != null && !possibleConcerns.isEmpty()
+                ? new ArrayList<>(possibleConcerns)
+                : DEFAULT_CONCERNS;
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public void enrich(Product product) {
+        // Draws happen in a fixed order whether or not a field is used, so filling one in later
+        // never changes the others
+        SplittableRandom random = new SplittableRandom(seed(product.getId()));
+        double price = 5 + random.nextDouble() * 45;
+        double rating = 3 + random.nextDouble() * 2;
+        List<String> concerns = pickConcerns(random);
+
+        if (product.getPrice() <= 0) {
+            product.fillPrice(Math.round(price * 100) / 100.0);
+        }
+        if (product.getRating() <= 0) {
+            product.fillRating((float) (Math.round(rating * 10) / 10.0));
+        }
+        if (product.getConcerns().isEmpty()) {
+            product.fillConcerns(concerns);
+        }
+    }
+
+    private List<String> pickConcerns(SplittableRandom random) {
+        List<String> concerns = new ArrayList<>();
+        int numConcerns = 1 + random.nextInt(3);
+        for (int i = 0; i < numConcerns; i++) {
+            String concern = possibleConcerns.get(random.nextInt(possibleConcerns.size()));
+            if (!concerns.contains(concern)) {
+                concerns.add(concern);
+            }
+        }
+        return concerns;
+    }
+
+    // 64-bit FNV-1a over the UTF-8 ID; String.hashCode is only 32 bits and clusters on short IDs
+    static long seed(String productId) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : productId.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -12,5 +12,14 @@ public interface OpenBeautyFactsApiService {
             @Query("page") int page
     );
 
+    @GET("cgi/search.pl")
+    Call<ProductSearchResponse> searchProducts(
+            @Query("search_terms") String query,
+            @Query("search_simple") int simple,
+            @Query("json") int json,
+            @Query("page") int page,
+            @Query("page_size") int pageSize
+    );
+
 }
 
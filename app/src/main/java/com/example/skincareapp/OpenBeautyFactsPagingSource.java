@@ -0,0 +1,99 @@
+package com.example.skincareapp;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Pages an Open Beauty Facts search. Pages of the paged list map one to one onto API pages,
+ * requested with the same page size. Loads block on the network, so the paged list must load on
+ * the network pool.
+ */
+class OpenBeautyFactsPagingSource implements ProductPagingSource {
+    private final OpenBeautyFactsApiService service;
+    private final String query;
+    private final int pageSize;
+    // The first page, fetched by count() and handed out by the first load
+    private ProductSearchResponse firstPage;
+    // Guarded by this; requests still running, cancelled together by cancel()
+    private final Set<Call<ProductSearchResponse>> inFlight = new HashSet<>();
+    private boolean canceled;
+
+    OpenBeautyFactsPagingSource(OpenBeautyFactsApiService service, String query, int pageSize) {
+        this.service = service;
+        this.query = query != null ? query.trim() : "";
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public int count() {
+        try {
+            ProductSearchResponse response = fetch(1);
+            synchronized (this) {
+                firstPage = response;
+            }
+            return response.getCount();
+        } catch (IOException e) {
+            throw new IllegalStateException("Open Beauty Facts search failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Page load(int position, PageKey after, int loadSize) {
+        int apiPage = position / pageSize + 1;
+        ProductSearchResponse response = null;
+        synchronized (this) {
+            if (apiPage == 1 && firstPage != null) {
+                response = firstPage;
+                firstPage = null;
+            }
+        }
+
+        try {
+            if (response == null) {
+                response = fetch(apiPage);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Error loading page " + apiPage + ": " + e.getMessage(), e);
+        }
+
+        return new Page(response.getProducts(), null);
+    }
+
+    // Cancels the requests in flight and fails every later one, for a search no longer wanted
+    void cancel() {
+        Set<Call<ProductSearchResponse>> calls;
+        synchronized (this) {
+            canceled = true;
+            calls = new HashSet<>(inFlight);
+        }
+        for (Call<ProductSearchResponse> call : calls) {
+            call.cancel();
+        }
+    }
+
+    private ProductSearchResponse fetch(int apiPage) throws IOException {
+        Call<ProductSearchResponse> call = service.searchProducts(query, 1, 1, apiPage, pageSize);
+        synchronized (this) {
+            if (canceled) {
+                throw new IOException("Canceled");
+            }
+            inFlight.add(call);
+        }
+
+        try {
+            Response<ProductSearchResponse> response = call.execute();
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("Code: " + response.code());
+            }
+            return response.body();
+        } finally {
+            synchronized (this) {
+                inFlight.remove(call);
+            }
+        }
+    }
+}
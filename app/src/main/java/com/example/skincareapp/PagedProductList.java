@@ -0,0 +1,270 @@
+package com.example.skincareapp;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A list of products of known size where only the pages around what is on screen are held.
+ *
+ * Unloaded positions read as null and are shown as placeholders. Reading a position loads its page,
+ * the page before it and the configured number of pages after it in the background, with at most
+ * a fixed number of loads outstanding. Once more pages are held than the retained window allows,
+ * the one farthest from the last read position is dropped again, so memory stays the same however
+ * many products match. Apart from {@link #create}, every method must be called on the main thread.
+ *
+ * The size is the source's count, which for remote sources is only what the server reported. When
+ * a page comes back shorter than it should, the list is cut off after it, so rows the source does
+ * not have never stay placeholders.
+ */
+public final class PagedProductList {
+    private static final String TAG = "PagedProductList";
+
+    public static final int PAGE_SIZE = 40;
+
+    public interface Listener {
+        // Positions start .. start + count - 1 now have products
+        void onRangeLoaded(int start, int count);
+
+        // The list was cut off: positions from start on, count of them, no longer exist
+        void onRangeRemoved(int start, int count);
+    }
+
+    public static final class Config {
+        private int pageSize = PAGE_SIZE;
+        private int prefetchPages = 1;
+        private int maxLoadedPages = 8;
+        private int maxOutstandingLoads = 3;
+
+        public Config setPageSize(int pageSize) {
+            this.pageSize = Math.max(1, pageSize);
+            return this;
+        }
+
+        // Pages after the one being read that are loaded ahead of time
+        public Config setPrefetchPages(int prefetchPages) {
+            this.prefetchPages = Math.max(0, prefetchPages);
+            return this;
+        }
+
+        // Retained window; never smaller than the pages a single read asks for
+        public Config setMaxLoadedPages(int maxLoadedPages) {
+            this.maxLoadedPages = Math.max(1, maxLoadedPages);
+            return this;
+        }
+
+        public Config setMaxOutstandingLoads(int maxOutstandingLoads) {
+            this.maxOutstandingLoads = Math.max(1, maxOutstandingLoads);
+            return this;
+        }
+    }
+
+    private final ProductPagingSource source;
+    private final Executor loadExecutor;
+    private final Executor mainThread;
+    // Only ever shrinks, see store()
+    private int size;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final int maxLoadedPages;
+    private final int maxOutstandingLoads;
+
+    private final Product[][] pages;
+    private final boolean[] loading;
+    // Last key of each page once it has been loaded, kept after the page itself is dropped
+    private final ProductPagingSource.PageKey[] lastKeys;
+    // Loaded page indexes, oldest first
+    private final Deque<Integer> loadedPages = new ArrayDeque<>();
+    private int lastReadPage;
+    private int outstandingLoads;
+    private Listener listener;
+    private boolean closed;
+
+    private PagedProductList(ProductPagingSource source, Config config, Executor loadExecutor,
+                             Executor mainThread, int size) {
+        this.source = source;
+        this.loadExecutor = loadExecutor;
+        this.mainThread = mainThread;
+        this.size = size;
+        this.pageSize = config.pageSize;
+        this.prefetchPages = config.prefetchPages;
+        this.maxLoadedPages = Math.max(config.maxLoadedPages, config.prefetchPages + 2);
+        this.maxOutstandingLoads = config.maxOutstandingLoads;
+
+        int pageCount = (size + pageSize - 1) / pageSize;
+        this.pages = new Product[pageCount][];
+        this.loading = new boolean[pageCount];
+        this.lastKeys = new ProductPagingSource.PageKey[pageCount];
+    }
+
+    /**
+     * Counts the source and loads the first page, so the list can be shown without a round of
+     * placeholders. Blocks; call it on a background thread.
+     */
+    static PagedProductList create(ProductPagingSource source, Executor loadExecutor, Executor mainThread) {
+        return create(source, new Config(), loadExecutor, mainThread);
+    }
+
+    static PagedProductList create(ProductPagingSource source, Config config, Executor loadExecutor,
+                                   Executor mainThread) {
+        Config effective = config != null ? config : new Config();
+        PagedProductList list = new PagedProductList(source, effective, loadExecutor, mainThread,
+                Math.max(0, source.count()));
+        if (list.pages.length > 0) {
+            list.store(0, source.load(0, null, list.pageSize));
+        }
+        return list;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the product at the position, or null while its page is loading. Either way the
+     * pages around the position are requested.
+     */
+    public Product get(int position) {
+        int page = position / pageSize;
+        lastReadPage = page;
+        requestAround(page);
+
+        Product[] items = pages[page];
+        int offset = position - page * pageSize;
+        return items != null && offset < items.length ? items[offset] : null;
+    }
+
+    // The product at the position if its page is held, else null; unlike get, requests nothing
+    Product peek(int position) {
+        Product[] items = pages[position / pageSize];
+        int offset = position % pageSize;
+        return items != null && offset < items.length ? items[offset] : null;
+    }
+
+    // Position of the product among the loaded pages, or -1; unloaded rows are bound fresh anyway
+    public int indexOfLoaded(String productId) {
+        for (int page : loadedPages) {
+            Product[] items = pages[page];
+            for (int i = 0; i < items.length; i++) {
+                if (items[i] != null && items[i].getId().equals(productId)) {
+                    return page * pageSize + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Stops loading; pages that arrive afterwards are discarded
+    public void close() {
+        closed = true;
+        listener = null;
+    }
+
+    // The page being read first, then the pages ahead of it, then the one behind
+    private void requestAround(int page) {
+        int last = Math.min(pageCount() - 1, page + prefetchPages);
+        for (int p = page; p <= last; p++) {
+            requestPage(p);
+        }
+        if (page > 0) {
+            requestPage(page - 1);
+        }
+    }
+
+    private void requestPage(int page) {
+        if (closed || page >= pageCount() || pages[page] != null || loading[page]
+                || outstandingLoads >= maxOutstandingLoads) {
+            return;
+        }
+
+        loading[page] = true;
+        outstandingLoads++;
+        int position = page * pageSize;
+        ProductPagingSource.PageKey after = page > 0 ? lastKeys[page - 1] : null;
+        loadExecutor.execute(() -> {
+            ProductPagingSource.Page result = null;
+            try {
+                result = source.load(position, after, pageSize);
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading page " + page, e);
+            }
+
+            ProductPagingSource.Page loaded = result;
+            mainThread.execute(() -> onPageLoaded(page, loaded));
+        });
+    }
+
+    private void onPageLoaded(int page, ProductPagingSource.Page result) {
+        loading[page] = false;
+        outstandingLoads--;
+        // A failed page stays unloaded and is requested again when it is next read; a page past a
+        // cut-off end is no longer part of the list
+        if (closed || result == null || page >= pageCount()) {
+            return;
+        }
+
+        int oldSize = size;
+        store(page, result);
+        trim();
+        if (listener != null && size < oldSize) {
+            listener.onRangeRemoved(size, oldSize - size);
+        }
+        if (listener != null && pages[page] != null && pages[page].length > 0) {
+            listener.onRangeLoaded(page * pageSize, pages[page].length);
+        }
+        // Pick up requests that were skipped while at the outstanding limit
+        requestAround(lastReadPage);
+    }
+
+    private void store(int page, ProductPagingSource.Page result) {
+        List<Product> items = result.items;
+        // The source may have shrunk since it was counted; never hold more than the page covers
+        int expected = Math.min(pageSize, size - page * pageSize);
+        int length = Math.min(items.size(), expected);
+        Product[] stored = new Product[length];
+        for (int i = 0; i < length; i++) {
+            stored[i] = items.get(i);
+        }
+
+        // A short page is where the source really ends, so the list ends there too
+        if (length < expected) {
+            size = page * pageSize + length;
+            for (int p = page + 1; p < pages.length; p++) {
+                if (pages[p] != null) {
+                    pages[p] = null;
+                    loadedPages.remove(p);
+                }
+            }
+        }
+
+        pages[page] = stored;
+        lastKeys[page] = result.lastKey;
+        loadedPages.remove(page);
+        loadedPages.addLast(page);
+    }
+
+    private int pageCount() {
+        return (size + pageSize - 1) / pageSize;
+    }
+
+    // Drops the pages farthest from where the list is being read
+    private void trim() {
+        while (loadedPages.size() > maxLoadedPages) {
+            Integer farthest = null;
+            for (Integer page : loadedPages) {
+                if (farthest == null || Math.abs(page - lastReadPage) > Math.abs(farthest - lastReadPage)) {
+                    farthest = page;
+                }
+            }
+            loadedPages.remove(farthest);
+            pages[farthest] = null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.skincareapp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wall-clock duration of each stage of one product request, so the network, parse, classify and
+ * filter stages can be measured separately.
+ */
+public class PipelineTimings {
+    public static final String STAGE_NETWORK = "network";
+    public static final String STAGE_PARSE = "parse";
+    public static final String STAGE_CATALOG = "catalog";
+    public static final String STAGE_CLASSIFY = "classify";
+    public static final String STAGE_FILTER = "filter";
+    public static final String STAGE_CACHE = "cache";
+
+    private final String label;
+    private final long startNanos;
+    private long markNanos;
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+
+    public PipelineTimings(String label) {
+        this.label = label;
+        this.startNanos = System.nanoTime();
+        this.markNanos = startNanos;
+    }
+
+    /**
+     * Charges the time since the previous mark (or the start) to the given stage.
+     */
+    public synchronized void stageDone(String stage) {
+        long now = System.nanoTime();
+        record(stage, now - markNanos);
+        markNanos = now;
+    }
+
+    public synchronized void record(String stage, long nanos) {
+        Long previous = stageNanos.get(stage);
+        stageNanos.put(stage, (previous != null ? previous : 0L) + Math.max(0L, nanos));
+    }
+
+    /**
+     * Splits a Retrofit execute() into time to response headers and the remaining body download
+     * and Gson parsing, using the timestamps OkHttp records on the raw response.
+     */
+    public synchronized void recordFetch(okhttp3.Response raw) {
+        long now = System.nanoTime();
+        long totalNanos = now - markNanos;
+        long headerNanos = raw != null
+                ? (raw.receivedResponseAtMillis() - raw.sentRequestAtMillis()) * 1_000_000L
+                : totalNanos;
+        headerNanos = Math.min(Math.max(0L, headerNanos), totalNanos);
+
+        record(STAGE_NETWORK, headerNanos);
+        record(STAGE_PARSE, totalNanos - headerNanos);
+        markNanos = now;
+    }
+
+    public synchronized long getStageMillis(String stage) {
+        Long nanos = stageNanos.get(stage);
+        return nanos != null ? nanos / 1_000_000L : 0L;
+    }
+
+    public synchronized long getTotalMillis() {
+        return (markNanos - startNanos) / 1_000_000L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder(label).append(" {");
+        for (Map.Entry<String, Long> entry : stageNanos.entrySet()) {
+            builder.append(' ').append(entry.getKey()).append('=')
+                    .append(entry.getValue() / 1_000_000L).append("ms");
+        }
+        return builder.append(" total=").append(getTotalMillis()).append("ms }").toString();
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.skincareapp;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.AbstractList;
+
+/**
+ * Filters one search result by price fast enough to follow a slider drag. The result's prices are
+ * copied once into two primitive columns: in catalog order, parallel to the ordinals, and sorted.
+ * A price range is then counted with two binary searches over the sorted column. Its products are
+ * shown through a {@link Selection}, a list updated in place as the range moves: the catalog-order
+ * column is scanned off the main thread into a reused buffer, and the change is reported as the
+ * rows inserted and removed, so a drag allocates nothing and rebinds no row that stays. Built by
+ * {@link ProductSearchIndex#priceFilter}.
+ */
+public class PriceRangeFilter {
+    private final ProductSearchIndex index;
+    // The result in catalog order, or null for every product in the index
+    private final int[] ordinals;
+    // Price in cents of each result position, parallel to ordinals
+    private final long[] prices;
+    // The same prices sorted ascending
+    private final long[] sortedPrices;
+
+    /**
+     * The products of the result within a price range, identified by the run of the sorted column
+     * they occupy. Two windows over the same run hold the same products.
+     */
+    public static final class Window {
+        final long minCents;
+        final long maxCents;
+        private final int from;
+        private final int to;
+
+        Window(long minCents, long maxCents, int from, int to) {
+            this.minCents = minCents;
+            this.maxCents = maxCents;
+            this.from = from;
+            this.to = to;
+        }
+
+        public int size() {
+            return to - from;
+        }
+
+        public boolean sameProducts(Window other) {
+            return other != null && from == other.from && to == other.to;
+        }
+    }
+
+    PriceRangeFilter(ProductSearchIndex index, int[] ordinals, long[] prices, long[] sortedPrices) {
+        this.index = index;
+        this.ordinals = ordinals;
+        this.prices = prices;
+        this.sortedPrices = sortedPrices;
+    }
+
+    public int size() {
+        return prices.length;
+    }
+
+    // Products priced from minPrice to maxPrice inclusive, either bound null for none
+    public Window window(Double minPrice, Double maxPrice) {
+        long min = ProductSearchIndex.minCents(minPrice);
+        long max = ProductSearchIndex.maxCents(maxPrice);
+        int from = ProductSearchIndex.lowerBound(sortedPrices, min);
+        int to = Math.max(from, ProductSearchIndex.upperBound(sortedPrices, max));
+        return new Window(min, max, from, to);
+    }
+
+    public int count(Double minPrice, Double maxPrice) {
+        return window(minPrice, maxPrice).size();
+    }
+
+    /**
+     * A selection showing the window's products, filled in on the compute pool. The listener gets
+     * it on the main thread once it holds the window, and later windows update it in place.
+     */
+    public Selection select(Window window, SelectionListener listener) {
+        Selection selection = new Selection(listener);
+        selection.setWindow(window);
+        return selection;
+    }
+
+    public interface SelectionListener {
+        // The first window is filled in; the selection can be shown from now on
+        void onSelectionReady(Selection selection);
+    }
+
+    /**
+     * The products of the current window in catalog order. Only read and changed on the main
+     * thread; {@link #setWindow} fills the next window in the background and, once it is applied,
+     * reports the difference to the update callback. Windows set while one is being filled are
+     * coalesced, so only the latest is applied after it.
+     */
+    public final class Selection extends AbstractList<Product> {
+        private final AppExecutors executors = AppExecutors.getInstance();
+        private final SelectionListener listener;
+        // Result offsets of the products shown, ascending; the first size are in use
+        private int[] shown = new int[prices.length];
+        private int size;
+        // Filled off the main thread with the next window's offsets, then swapped with shown
+        private int[] next = new int[prices.length];
+        private Window window;
+        private Window pending;
+        private boolean filling;
+        private boolean ready;
+        private boolean closed;
+        private ListUpdateCallback updateCallback;
+
+        private Selection(SelectionListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public Product get(int position) {
+            if (position < 0 || position >= size) {
+                throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+            }
+            int offset = shown[position];
+            return index.get(ordinals != null ? ordinals[offset] : offset);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        public void setWindow(Window window) {
+            pending = window;
+            if (!filling) {
+                fillPending();
+            }
+        }
+
+        // Receives the rows inserted and removed by each window applied after the first
+        public void setUpdateCallback(ListUpdateCallback updateCallback) {
+            this.updateCallback = updateCallback;
+        }
+
+        // Stops applying windows; the products shown stay as they are
+        public void close() {
+            closed = true;
+            pending = null;
+            updateCallback = null;
+        }
+
+        private void fillPending() {
+            Window target = pending;
+            pending = null;
+            if (closed || target == null || (ready && target.sameProducts(window))) {
+                return;
+            }
+
+            filling = true;
+            int[] buffer = next;
+            executors.compute().execute(() -> {
+                int count = 0;
+                for (int offset = 0; offset < prices.length; offset++) {
+                    long price = prices[offset];
+                    if (price >= target.minCents && price <= target.maxCents) {
+                        buffer[count++] = offset;
+                    }
+                }
+                int filled = count;
+                executors.mainThread().execute(() -> apply(target, buffer, filled));
+            });
+        }
+
+        private void apply(Window target, int[] buffer, int count) {
+            filling = false;
+            if (closed) {
+                return;
+            }
+
+            int[] previous = shown;
+            int previousSize = size;
+            shown = buffer;
+            size = count;
+            next = previous;
+            window = target;
+            if (!ready) {
+                ready = true;
+                listener.onSelectionReady(this);
+            } else if (updateCallback != null) {
+                dispatchChanges(previous, previousSize, buffer, count, updateCallback);
+            }
+            fillPending();
+        }
+    }
+
+    /**
+     * Reports how one ascending run of offsets turned into another as removals and insertions.
+     * Works from the end, so each position is still valid when the rows before it are unchanged.
+     */
+    static void dispatchChanges(int[] oldOffsets, int oldSize, int[] newOffsets, int newSize,
+                                ListUpdateCallback callback) {
+        int i = oldSize - 1;
+        int j = newSize - 1;
+        while (i >= 0 || j >= 0) {
+            int oldOffset = i >= 0 ? oldOffsets[i] : -1;
+            int newOffset = j >= 0 ? newOffsets[j] : -1;
+            if (oldOffset == newOffset) {
+                i--;
+                j--;
+            } else if (oldOffset > newOffset) {
+                int end = i;
+                while (i >= 0 && oldOffsets[i] > newOffset) {
+                    i--;
+                }
+                callback.onRemoved(i + 1, end - i);
+            } else {
+                int end = j;
+                while (j >= 0 && newOffsets[j] > oldOffset) {
+                    j--;
+                }
+                callback.onInserted(i + 1, end - j);
+            }
+        }
+    }
+}
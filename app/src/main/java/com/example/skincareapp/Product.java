@@ -1,17 +1,21 @@
 package com.example.skincareapp;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class Product {
     @SerializedName("id")
+    @JsonAdapter(ProductTypeAdapterFactory.LenientIdAdapter.class)
     private Integer id; // Changed to Integer to handle null
 
-    @SerializedName("name")
+    // Alternates are the Open Beauty Facts names for the same fields
+    @SerializedName(value = "name", alternate = {"product_name"})
     private String name;
 
-    @SerializedName("brand")
+    @SerializedName(value = "brand", alternate = {"brands"})
     private String brand;
 
     @SerializedName("product_type")
@@ -20,12 +24,18 @@ public class Product {
     @SerializedName("description")
     private String description;
 
-    @SerializedName("image_link")
+    @SerializedName(value = "image_link", alternate = {"image_url"})
     private String imageUrl;
 
     @SerializedName("price")
     private String priceString;
 
+    @SerializedName("price_sign")
+    private String priceSign;
+
+    @SerializedName("currency")
+    private String currency;
+
     @SerializedName("rating")
     private Double rating;
 
@@ -38,6 +48,37 @@ public class Product {
     // Local-only fields
     private List<String> concerns;
     private boolean isFavorite = false;
+    // ID of the enricher that filled in missing fields; saved with the catalog snapshot
+    @SerializedName("enriched_by")
+    private String enrichedBy;
+    // FILLED_* bits for the fields an enricher wrote, so they can be told apart from source data
+    @SerializedName("filled_fields")
+    private int filledFields;
+
+    static final int FILLED_PRICE = 1;
+    static final int FILLED_RATING = 1 << 1;
+    static final int FILLED_CONCERNS = 1 << 2;
+
+    // Normalized fields, computed once by normalize() instead of on every getter call.
+    // Transient so they are never serialized with the raw API fields.
+    private transient boolean normalized;
+    private transient String stableId;
+    private transient String normName;
+    private transient String normBrand;
+    private transient String normType;
+    private transient String normDescription;
+    private transient String normImageUrl;
+    private transient String normCategory;
+    private transient String nameKey;
+    private transient String brandKey;
+    private transient String typeKey;
+    private transient long priceCents;
+    private transient String normCurrency;
+    private transient String formattedPrice;
+    private transient boolean skincare;
+    private transient int classifiedBy;
+    // Encoded from concerns on first use; cleared whenever they change
+    private transient ConcernVocabulary.Mask concernMask;
 
     // Default constructor
     public Product() {
@@ -66,50 +107,75 @@ public class Product {
 
     // Null-safe getters with proper defaults
     public String getId() {
-        if (id != null) {
-            return String.valueOf(id);
-        }
-        // Generate a fallback ID based on name and brand
-        String fallbackName = (name != null && !name.trim().isEmpty()) ? name.trim() : "unknown";
-        String fallbackBrand = (brand != null && !brand.trim().isEmpty()) ? brand.trim() : "brand";
-        return (fallbackName + "_" + fallbackBrand + "_" + System.currentTimeMillis()).replaceAll("\\s+", "_");
+        ensureNormalized();
+        return stableId;
     }
 
     public String getName() {
-        return (name != null && !name.trim().isEmpty()) ? name.trim() : "Unknown Product";
+        ensureNormalized();
+        return normName;
     }
 
     public String getBrand() {
-        return (brand != null && !brand.trim().isEmpty()) ? brand.trim() : "Unknown Brand";
+        ensureNormalized();
+        return normBrand;
     }
 
     public String getType() {
-        return (type != null && !type.trim().isEmpty()) ? type.trim() : "beauty";
+        ensureNormalized();
+        return normType;
     }
 
     public String getDescription() {
-        return (description != null && !description.trim().isEmpty()) ? description.trim() : "No description available";
+        ensureNormalized();
+        return normDescription;
     }
 
     public String getImageUrl() {
-        // Return null for empty/whitespace strings to let Glide handle placeholder
-        return (imageUrl != null && !imageUrl.trim().isEmpty()) ? imageUrl.trim() : null;
+        // Null for empty/whitespace strings to let Glide handle placeholder
+        ensureNormalized();
+        return normImageUrl;
     }
 
     public double getPrice() {
-        if (priceString != null && !priceString.trim().isEmpty()) {
-            try {
-                // Remove any currency symbols and parse
-                String cleanPrice = priceString.trim().replaceAll("[^\\d.]", "");
-                if (!cleanPrice.isEmpty()) {
-                    return Double.parseDouble(cleanPrice);
-                }
-            } catch (NumberFormatException e) {
-                // Log the error if you have logging available
-                // Log.w("Product", "Invalid price format: " + priceString, e);
-            }
+        ensureNormalized();
+        return priceCents / 100.0;
+    }
+
+    // Price as fixed-point cents, 0 when the API value is missing or unparseable
+    public long getPriceCents() {
+        ensureNormalized();
+        return priceCents;
+    }
+
+    public String getCurrency() {
+        ensureNormalized();
+        return normCurrency;
+    }
+
+    public String getFormattedPrice() {
+        ensureNormalized();
+        if (formattedPrice == null) {
+            formattedPrice = String.format(Locale.US, "%s%d.%02d", currencySymbol(normCurrency),
+                    priceCents / 100, priceCents % 100);
         }
-        return 0.0;
+        return formattedPrice;
+    }
+
+    // Lower-cased keys for matching, so filters never lower-case per call
+    public String getNameKey() {
+        ensureNormalized();
+        return nameKey;
+    }
+
+    public String getBrandKey() {
+        ensureNormalized();
+        return brandKey;
+    }
+
+    public String getTypeKey() {
+        ensureNormalized();
+        return typeKey;
     }
 
     public float getRating() {
@@ -120,7 +186,8 @@ public class Product {
     }
 
     public String getCategory() {
-        return (category != null && !category.trim().isEmpty()) ? category.trim() : "General";
+        ensureNormalized();
+        return normCategory;
     }
 
     public List<ProductColor> getProductColors() {
@@ -137,6 +204,60 @@ public class Product {
         return concerns;
     }
 
+    // Concerns as a bitmask over the shared vocabulary, so filters compare them with a single AND
+    ConcernVocabulary.Mask getConcernMask() {
+        ConcernVocabulary.Mask mask = concernMask;
+        if (mask == null) {
+            mask = ConcernVocabulary.getInstance().encode(getConcerns());
+            concernMask = mask;
+        }
+        return mask;
+    }
+
+    String getEnrichedBy() {
+        return enrichedBy;
+    }
+
+    void setEnrichedBy(String enrichedBy) {
+        this.enrichedBy = enrichedBy;
+    }
+
+    boolean isFilled(int field) {
+        return (filledFields & field) != 0;
+    }
+
+    // Enricher-side setters: same as the public ones, but remember the value was not from the source
+    void fillPrice(double price) {
+        setPrice(price);
+        filledFields |= FILLED_PRICE;
+    }
+
+    void fillRating(float rating) {
+        setRating(rating);
+        filledFields |= FILLED_RATING;
+    }
+
+    void fillConcerns(List<String> concerns) {
+        setConcerns(concerns);
+        filledFields |= FILLED_CONCERNS;
+    }
+
+    // Drops every enricher-written value, leaving only what the source sent
+    void clearFilledFields() {
+        if ((filledFields & FILLED_PRICE) != 0) {
+            priceString = null;
+            normalizePrice();
+        }
+        if ((filledFields & FILLED_RATING) != 0) {
+            rating = null;
+        }
+        if ((filledFields & FILLED_CONCERNS) != 0) {
+            concerns = new ArrayList<>();
+            concernMask = null;
+        }
+        filledFields = 0;
+    }
+
     public boolean isFavorite() {
         return isFavorite;
     }
@@ -145,12 +266,15 @@ public class Product {
     public void setPrice(double price) {
         if (price >= 0) {
             this.priceString = String.valueOf(price);
+            filledFields &= ~FILLED_PRICE;
+            normalizePrice();
         }
     }
 
     public void setRating(float rating) {
         if (rating >= 0 && rating <= 5) {
             this.rating = (double) rating;
+            filledFields &= ~FILLED_RATING;
         }
     }
 
@@ -166,6 +290,8 @@ public class Product {
         } else {
             this.concerns = new ArrayList<>();
         }
+        filledFields &= ~FILLED_CONCERNS;
+        concernMask = null;
     }
 
     public void setFavorite(boolean favorite) {
@@ -173,28 +299,39 @@ public class Product {
     }
 
     // Additional null-safe setters
+    public void setId(Integer id) {
+        this.id = id;
+        normalized = false;
+    }
+
     public void setName(String name) {
         this.name = (name != null && !name.trim().isEmpty()) ? name.trim() : null;
+        normalized = false;
     }
 
     public void setBrand(String brand) {
         this.brand = (brand != null && !brand.trim().isEmpty()) ? brand.trim() : null;
+        normalized = false;
     }
 
     public void setType(String type) {
         this.type = (type != null && !type.trim().isEmpty()) ? type.trim() : null;
+        normalized = false;
     }
 
     public void setDescription(String description) {
         this.description = (description != null && !description.trim().isEmpty()) ? description.trim() : null;
+        normalized = false;
     }
 
     public void setImageUrl(String imageUrl) {
         this.imageUrl = (imageUrl != null && !imageUrl.trim().isEmpty()) ? imageUrl.trim() : null;
+        normalized = false;
     }
 
     public void setCategory(String category) {
         this.category = (category != null && !category.trim().isEmpty()) ? category.trim() : null;
+        normalized = false;
     }
 
     public void setProductColors(List<ProductColor> productColors) {
@@ -205,72 +342,154 @@ public class Product {
         }
     }
 
-    // Enhanced helper method to check if this is a skincare product with null safety
+    // Classification is cached per product and only recomputed when the dictionaries change
     public boolean isSkincareProduct() {
-        // Check product type first
-        if (type != null && !type.trim().isEmpty()) {
-            String lowerType = type.trim().toLowerCase();
-            if (containsSkincareKeywords(lowerType)) {
-                return true;
-            }
+        ensureNormalized();
+
+        SkincareClassifier classifier = SkincareClassifier.getDefault();
+        if (classifiedBy != classifier.getGeneration()) {
+            // Missing raw values are skipped, so placeholder names never match a keyword
+            skincare = classifier.isSkincare(type != null ? typeKey : null,
+                    name != null ? nameKey : null,
+                    brand != null ? brandKey : null);
+            classifiedBy = classifier.getGeneration();
         }
-
-        // Check product name as fallback
-        if (name != null && !name.trim().isEmpty()) {
-            String lowerName = name.trim().toLowerCase();
-            if (containsSkincareKeywords(lowerName)) {
-                return true;
-            }
+        return skincare;
+    }
+
+    /**
+     * Computes every normalized field from the raw API values. Runs once at deserialization
+     * (see ProductTypeAdapterFactory) and again only when a setter changes a raw value.
+     */
+    public void normalize() {
+        normName = trimmedOr(name, "Unknown Product");
+        normBrand = trimmedOr(brand, "Unknown Brand");
+        normType = trimmedOr(type, "beauty");
+        normDescription = trimmedOr(description, "No description available");
+        normImageUrl = trimmedOr(imageUrl, null);
+        normCategory = trimmedOr(category, "General");
+        nameKey = normName.toLowerCase(Locale.ROOT);
+        brandKey = normBrand.toLowerCase(Locale.ROOT);
+        typeKey = normType.toLowerCase(Locale.ROOT);
+        stableId = id != null ? String.valueOf(id) : contentId(brandKey, nameKey, typeKey);
+        classifiedBy = 0;
+        normalizePrice();
+        normalized = true;
+    }
+
+    private void ensureNormalized() {
+        if (!normalized) {
+            normalize();
         }
+    }
 
-        // Check brand for skincare-specific brands
-        if (brand != null && !brand.trim().isEmpty()) {
-            String lowerBrand = brand.trim().toLowerCase();
-            if (isSkincareBrand(lowerBrand)) {
-                return true;
+    private void normalizePrice() {
+        priceCents = parseCents(priceString);
+        normCurrency = detectCurrency(currency, priceSign, priceString);
+        formattedPrice = null;
+    }
+
+    /**
+     * Derives an ID for products the API sends without one. It hashes the normalized brand, name
+     * and type, so the same product gets the same ID on every fetch and after a restart.
+     */
+    static String contentId(String brandKey, String nameKey, String typeKey) {
+        // 64-bit FNV-1a; a separator keeps ("ab", "c") and ("a", "bc") apart
+        long hash = 0xcbf29ce484222325L;
+        String[] parts = {brandKey, nameKey, typeKey};
+        for (String part : parts) {
+            for (int i = 0; i < part.length(); i++) {
+                hash ^= part.charAt(i);
+                hash *= 0x100000001b3L;
             }
+            hash ^= '|';
+            hash *= 0x100000001b3L;
         }
+        return "local_" + Long.toHexString(hash);
+    }
 
-        return false;
+    private static String trimmedOr(String value, String fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? fallback : trimmed;
     }
 
-    private boolean containsSkincareKeywords(String text) {
-        if (text == null || text.trim().isEmpty()) {
-            return false;
+    // Reads "$12.5", "12.50 CAD" or "1,299.00" as cents; anything with two decimal points is invalid
+    static long parseCents(String raw) {
+        if (raw == null) {
+            return 0;
         }
 
-        String[] skincareKeywords = {
-                "cleanser", "moisturizer", "serum", "toner", "sunscreen",
-                "face", "skincare", "foundation", "lipstick", "mascara",
-                "cream", "lotion", "gel", "mask", "exfoliant", "retinol",
-                "vitamin c", "hyaluronic", "niacinamide", "salicylic",
-                "glycolic", "peptide", "antioxidant", "spf"
-        };
-
-        for (String keyword : skincareKeywords) {
-            if (text.contains(keyword)) {
-                return true;
+        long units = 0;
+        int fractionDigits = 0;
+        int roundingDigit = 0;
+        boolean seenDigit = false;
+        boolean inFraction = false;
+
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '.') {
+                if (inFraction) {
+                    return 0;
+                }
+                inFraction = true;
+            } else if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                int digit = c - '0';
+                if (!inFraction) {
+                    units = units * 10 + digit;
+                    if (units > Long.MAX_VALUE / 1000) {
+                        return 0;
+                    }
+                } else if (fractionDigits < 2) {
+                    units = units * 10 + digit;
+                    fractionDigits++;
+                } else if (fractionDigits == 2) {
+                    roundingDigit = digit;
+                    fractionDigits++;
+                }
             }
         }
-        return false;
-    }
 
-    private boolean isSkincareBrand(String brand) {
-        if (brand == null || brand.trim().isEmpty()) {
-            return false;
+        if (!seenDigit) {
+            return 0;
         }
+        for (; fractionDigits < 2; fractionDigits++) {
+            units *= 10;
+        }
+        return roundingDigit >= 5 ? units + 1 : units;
+    }
 
-        String[] skincareBrands = {
-                "cetaphil", "cerave", "neutrogena", "olay", "clinique",
-                "la roche posay", "eucerin", "aveeno", "skinceuticals"
-        };
+    static String detectCurrency(String currencyCode, String sign, String raw) {
+        if (currencyCode != null && currencyCode.trim().length() == 3) {
+            return currencyCode.trim().toUpperCase(Locale.ROOT);
+        }
 
-        for (String skincareBrand : skincareBrands) {
-            if (brand.contains(skincareBrand)) {
-                return true;
-            }
+        String symbols = (sign != null ? sign : "") + (raw != null ? raw : "");
+        if (symbols.indexOf('\u20AC') >= 0) {
+            return "EUR";
+        }
+        if (symbols.indexOf('\u00A3') >= 0) {
+            return "GBP";
+        }
+        return "USD";
+    }
+
+    private static String currencySymbol(String currencyCode) {
+        switch (currencyCode) {
+            case "EUR":
+                return "\u20AC";
+            case "GBP":
+                return "\u00A3";
+            case "USD":
+            case "CAD":
+            case "AUD":
+                return "$";
+            default:
+                return currencyCode + " ";
         }
-        return false;
     }
 
     // Utility method to check if product has valid essential data
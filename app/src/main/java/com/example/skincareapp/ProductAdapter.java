@@ -1,5 +1,6 @@
 package com.example.skincareapp;
 
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,20 +9,241 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
+/**
+ * Shows an immutable snapshot of products, a {@link PagedProductList} or a price
+ * {@link PriceRangeFilter.Selection}.
+ *
+ * {@link #submitList} diffs the new snapshot against the current one on a background thread and
+ * dispatches only the rows that were inserted, removed, moved or changed, so refining a large
+ * result list does not rebind every visible row. A paged list is read as rows are bound, with
+ * unloaded rows shown as placeholders until their page arrives. Swapping in a paged list compares
+ * the rows position by position instead, since most of them are placeholders that cannot be
+ * matched up; only rows showing a different product, or a placeholder, are rebound. A price
+ * selection changes in place and reports its own inserted and removed rows.
+ */
 public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductViewHolder> {
+    private static final String TAG = "ProductAdapter";
+    // Partial rebind that only refreshes the heart icon
+    private static final Object PAYLOAD_FAVORITE = new Object();
 
-    private List<Product> products;
+    private final AppExecutors executors;
+    private List<Product> products = Collections.emptyList();
+    // Parallel to products; hash of everything a row displays
+    private int[] contentHashes = new int[0];
+    // Bumped by every submission so a diff finishing after a newer one is dropped
+    private int submitGeneration;
+    // Non-null while a paged list is shown instead of the snapshot
+    private PagedProductList pagedList;
+    // Non-null while a price selection is shown; it is then also the products list
+    private PriceRangeFilter.Selection selection;
     private FavoritesManager favoritesManager;
     private OnProductClickListener onProductClickListener;
 
+    private final FavoritesManager.Listener favoritesListener = new FavoritesManager.Listener() {
+        @Override
+        public void onFavoriteChanged(String productId, boolean favorite) {
+            notifyFavoriteChanged(productId);
+        }
+
+        @Override
+        public void onFavoritesLoaded() {
+            if (getItemCount() > 0) {
+                notifyItemRangeChanged(0, getItemCount(), PAYLOAD_FAVORITE);
+            }
+        }
+    };
+
     public ProductAdapter(List<Product> products, OnProductClickListener onProductClickListener) {
-        this.products = products;
+        this.executors = AppExecutors.getInstance();
         this.favoritesManager = FavoritesManager.getInstance(); // Use singleton instance
         this.onProductClickListener = onProductClickListener;
+        setHasStableIds(true);
+        if (products != null && !products.isEmpty()) {
+            this.products = Collections.unmodifiableList(new ArrayList<>(products));
+            this.contentHashes = hashAll(this.products);
+        }
+    }
+
+    /**
+     * Replaces the displayed list. Must be called on the main thread; the list is copied, so the
+     * caller may keep mutating its own.
+     */
+    public void submitList(List<Product> newList) {
+        int generation = ++submitGeneration;
+        List<Product> oldProducts = products;
+        int[] oldHashes = contentHashes;
+        List<Product> newProducts = newList != null && !newList.isEmpty()
+                ? Collections.unmodifiableList(new ArrayList<>(newList))
+                : Collections.<Product>emptyList();
+
+        // Placeholder rows cannot be diffed, so leaving paged mode compares rows by position; so
+        // does leaving a selection, which has no content hashes to diff
+        if (pagedList != null || selection != null) {
+            RowReader oldRows = currentRows();
+            int oldSize = getItemCount();
+            closeLiveContents();
+            products = newProducts;
+            contentHashes = hashAll(newProducts);
+            notifyRowsReplaced(oldRows, oldSize);
+            return;
+        }
+
+        // Nothing to diff against on either side: a single range notification is already minimal
+        if (oldProducts.isEmpty() || newProducts.isEmpty()) {
+            if (oldProducts.isEmpty() && newProducts.isEmpty()) {
+                return;
+            }
+            int[] newHashes = hashAll(newProducts);
+            products = newProducts;
+            contentHashes = newHashes;
+            if (newProducts.isEmpty()) {
+                notifyItemRangeRemoved(0, oldProducts.size());
+            } else {
+                notifyItemRangeInserted(0, newProducts.size());
+            }
+            return;
+        }
+
+        executors.compute().execute(() -> {
+            try {
+                int[] newHashes = hashAll(newProducts);
+                DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                        new SnapshotDiff(oldProducts, oldHashes, newProducts, newHashes));
+                executors.mainThread().execute(() -> {
+                    if (generation != submitGeneration) {
+                        return;
+                    }
+                    products = newProducts;
+                    contentHashes = newHashes;
+                    result.dispatchUpdatesTo(this);
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error diffing product list", e);
+            }
+        });
+    }
+
+    /**
+     * Shows a paged list in place of the current contents. Must be called on the main thread. The
+     * previous paged list, if any, stops loading.
+     */
+    public void submitPagedList(PagedProductList newList) {
+        ++submitGeneration;
+        RowReader oldRows = currentRows();
+        int oldSize = getItemCount();
+        closeLiveContents();
+        pagedList = newList;
+        products = Collections.emptyList();
+        contentHashes = new int[0];
+        if (newList != null) {
+            newList.setListener(new PagedProductList.Listener() {
+                @Override
+                public void onRangeLoaded(int start, int count) {
+                    notifyItemRangeChanged(start, count);
+                }
+
+                @Override
+                public void onRangeRemoved(int start, int count) {
+                    notifyItemRangeRemoved(start, count);
+                }
+            });
+        }
+        notifyRowsReplaced(oldRows, oldSize);
+    }
+
+    /**
+     * Shows a price selection in place of the current contents, compared by position like a paged
+     * list. Must be called on the main thread. From then on each window the selection applies is
+     * dispatched as the rows it inserted and removed, until other contents replace it.
+     */
+    public void submitSelection(PriceRangeFilter.Selection newSelection) {
+        ++submitGeneration;
+        RowReader oldRows = currentRows();
+        int oldSize = getItemCount();
+        closeLiveContents();
+        selection = newSelection;
+        products = newSelection;
+        contentHashes = new int[0];
+        newSelection.setUpdateCallback(new AdapterListUpdateCallback(this));
+        notifyRowsReplaced(oldRows, oldSize);
+    }
+
+    // Rows as shown right now; stays readable after closeLiveContents, which freezes them
+    private RowReader currentRows() {
+        if (pagedList != null) {
+            return pagedList::peek;
+        }
+        return products::get;
+    }
+
+    // The paged list stops loading and the selection stops changing
+    private void closeLiveContents() {
+        if (pagedList != null) {
+            pagedList.close();
+            pagedList = null;
+        }
+        if (selection != null) {
+            selection.close();
+            selection = null;
+        }
+    }
+
+    /**
+     * Notifies the difference between the previous rows and the current ones, compared by position:
+     * runs of rows showing another product, or a placeholder on either side, are reported changed,
+     * and the size difference as inserted or removed at the end. Rows showing the same product keep
+     * their views.
+     */
+    private void notifyRowsReplaced(RowReader oldRows, int oldSize) {
+        int newSize = getItemCount();
+        int common = Math.min(oldSize, newSize);
+        int runStart = -1;
+        for (int i = 0; i < common; i++) {
+            boolean changed = !sameRow(oldRows.rowAt(i), rowAt(i));
+            if (changed && runStart < 0) {
+                runStart = i;
+            } else if (!changed && runStart >= 0) {
+                notifyItemRangeChanged(runStart, i - runStart);
+                runStart = -1;
+            }
+        }
+        if (runStart >= 0) {
+            notifyItemRangeChanged(runStart, common - runStart);
+        }
+        if (newSize > common) {
+            notifyItemRangeInserted(common, newSize - common);
+        } else if (oldSize > common) {
+            notifyItemRangeRemoved(common, oldSize - common);
+        }
+    }
+
+    private static boolean sameRow(Product oldProduct, Product newProduct) {
+        return oldProduct != null && newProduct != null
+                && oldProduct.getId().equals(newProduct.getId())
+                && contentHash(oldProduct) == contentHash(newProduct);
+    }
+
+    // Row at the position as currently held, null for a placeholder; never requests a page
+    private Product rowAt(int position) {
+        return pagedList != null ? pagedList.peek(position) : products.get(position);
+    }
+
+    private interface RowReader {
+        Product rowAt(int position);
+    }
+
+    // The current snapshot; empty while a paged list is shown
+    public List<Product> getCurrentList() {
+        return products;
     }
 
     @NonNull
@@ -32,35 +254,159 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
     }
 
     @Override
-    public void onBindViewHolder(@NonNull ProductViewHolder holder, int position) {
-        Product product = products.get(position);
-        holder.productName.setText(product.getName());
-        holder.productPrice.setText(String.valueOf(product.getPrice()));
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        favoritesManager.addListener(favoritesListener);
+    }
 
-        // Update favorite icon based on whether the product is in favorites
-        if (favoritesManager.getFavorites().contains(product)) {
-            holder.favoriteIcon.setImageResource(R.drawable.ic_favorite); // Filled heart icon
-        } else {
-            holder.favoriteIcon.setImageResource(R.drawable.ic_favorite_border); // Empty heart icon
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        favoritesManager.removeListener(favoritesListener);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ProductViewHolder holder, int position, @NonNull List<Object> payloads) {
+        Product product = pagedList != null ? pagedList.get(position) : products.get(position);
+        if (product != null && !payloads.isEmpty() && onlyFavoritePayloads(payloads)) {
+            bindFavoriteIcon(holder, product);
+            return;
         }
+        onBindViewHolder(holder, position);
+    }
 
-        // Set click listener for the favorite icon
+    @Override
+    public void onBindViewHolder(@NonNull ProductViewHolder holder, int position) {
+        Product product = pagedList != null ? pagedList.get(position) : products.get(position);
+        if (product == null) {
+            bindPlaceholder(holder);
+            return;
+        }
+
+        holder.productName.setText(product.getName());
+        holder.productPrice.setText(product.getFormattedPrice());
+        bindFavoriteIcon(holder, product);
+
+        // Set click listener for the favorite icon; the icon itself updates from the change event
         holder.favoriteIcon.setOnClickListener(v -> {
-            if (favoritesManager.getFavorites().contains(product)) {
-                favoritesManager.getFavorites().remove(product);
-                holder.favoriteIcon.setImageResource(R.drawable.ic_favorite_border);
+            if (favoritesManager.isFavorite(product)) {
+                favoritesManager.removeFromFavorites(product);
                 Toast.makeText(holder.itemView.getContext(), "Removed from favorites", Toast.LENGTH_SHORT).show();
             } else {
                 favoritesManager.addToFavorites(product);
-                holder.favoriteIcon.setImageResource(R.drawable.ic_favorite);
                 Toast.makeText(holder.itemView.getContext(), "Added to favorites", Toast.LENGTH_SHORT).show();
             }
         });
     }
 
+    private void bindFavoriteIcon(ProductViewHolder holder, Product product) {
+        // Update favorite icon based on whether the product is in favorites
+        if (favoritesManager.isFavorite(product)) {
+            holder.favoriteIcon.setImageResource(R.drawable.ic_favorite); // Filled heart icon
+        } else {
+            holder.favoriteIcon.setImageResource(R.drawable.ic_favorite_border); // Empty heart icon
+        }
+    }
+
+    private static boolean onlyFavoritePayloads(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_FAVORITE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Rebinds just the heart of the row showing the product, if it is in the list
+    private void notifyFavoriteChanged(String productId) {
+        if (pagedList != null) {
+            int position = pagedList.indexOfLoaded(productId);
+            if (position >= 0) {
+                notifyItemChanged(position, PAYLOAD_FAVORITE);
+            }
+            return;
+        }
+        for (int i = 0; i < products.size(); i++) {
+            if (products.get(i).getId().equals(productId)) {
+                notifyItemChanged(i, PAYLOAD_FAVORITE);
+            }
+        }
+    }
+
+    // Blank row for a product whose page is still loading
+    private void bindPlaceholder(ProductViewHolder holder) {
+        holder.productName.setText("");
+        holder.productPrice.setText("");
+        holder.favoriteIcon.setImageResource(R.drawable.ic_favorite_border);
+        holder.favoriteIcon.setOnClickListener(null);
+    }
+
     @Override
     public int getItemCount() {
-        return products.size();
+        return pagedList != null ? pagedList.size() : products.size();
+    }
+
+    // Placeholders get an id of their own per position, replaced by the product's once its page loads
+    @Override
+    public long getItemId(int position) {
+        Product product = rowAt(position);
+        return product != null ? idHash(product.getId()) : Long.MIN_VALUE + position;
+    }
+
+    private static long idHash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static int[] hashAll(List<Product> list) {
+        int[] hashes = new int[list.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = contentHash(list.get(i));
+        }
+        return hashes;
+    }
+
+    private static int contentHash(Product product) {
+        return Objects.hash(product.getName(), product.getFormattedPrice(), product.getImageUrl(),
+                product.getBrand(), product.getRating());
+    }
+
+    private static final class SnapshotDiff extends DiffUtil.Callback {
+        private final List<Product> oldList;
+        private final int[] oldHashes;
+        private final List<Product> newList;
+        private final int[] newHashes;
+
+        SnapshotDiff(List<Product> oldList, int[] oldHashes, List<Product> newList, int[] newHashes) {
+            this.oldList = oldList;
+            this.oldHashes = oldHashes;
+            this.newList = newList;
+            this.newHashes = newHashes;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return oldList.get(oldPosition).getId().equals(newList.get(newPosition).getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return oldHashes[oldPosition] == newHashes[newPosition];
+        }
     }
 
     public static class ProductViewHolder extends RecyclerView.ViewHolder {
@@ -1,15 +1,22 @@
 package com.example.skincareapp;
 
 import java.util.List;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.GET;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 public interface ProductApiService {
     // Get all products
     @GET("api/v1/products.json")
     Call<List<Product>> getAllProducts();
 
+    // Same list, left unparsed so it can be read while it downloads
+    @Streaming
+    @GET("api/v1/products.json")
+    Call<ResponseBody> streamAllProducts();
+
     // Search by brand
     @GET("api/v1/products.json")
     Call<List<Product>> getProductsByBrand(@Query("brand") String brand);
@@ -2,9 +2,8 @@ package com.example.skincareapp;
 
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
-import androidx.room.Insert;
-import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Upsert;
 
 import java.util.List;
 
@@ -14,21 +13,61 @@ public interface ProductDao {
     @Query("SELECT * FROM products")
     List<ProductEntity> getAll();
 
+    // Read once at startup by FavoritesManager
     @Query("SELECT * FROM products WHERE isFavorite = 1")
-    LiveData<List<ProductEntity>> getFavorites();
+    List<ProductEntity> getFavorites();
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    // Upserts rather than REPLACE: a REPLACE delete skips the triggers that keep products_fts in sync
+    @Upsert
     void insertAll(List<ProductEntity> products);
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    @Upsert
     void insert(ProductEntity product);
 
+    // Returns the number of rows changed, 0 when the product was never saved
     @Query("UPDATE products SET isFavorite = :isFavorite WHERE id = :productId")
-    void updateFavorite(String productId, boolean isFavorite);
+    int updateFavorite(String productId, boolean isFavorite);
 
     @Query("SELECT * FROM products WHERE productType = :productType AND price BETWEEN :minPrice AND :maxPrice")
     LiveData<List<ProductEntity>> filterProducts(String productType, double minPrice, double maxPrice);
 
+    /*
+     * Keyset pages in (sortKey, id) order, served by the index on those columns. Pass empty
+     * strings for the first page; the OFFSET forms are only for jumping to a page whose
+     * predecessor was never read.
+     */
+    @Query("SELECT * FROM products WHERE sortKey > :afterSortKey OR (sortKey = :afterSortKey AND id > :afterId) " +
+            "ORDER BY sortKey, id LIMIT :limit")
+    List<ProductEntity> getPageAfter(String afterSortKey, String afterId, int limit);
+
+    @Query("SELECT * FROM products ORDER BY sortKey, id LIMIT :limit OFFSET :offset")
+    List<ProductEntity> getPageAt(int offset, int limit);
+
+    @Query("SELECT COUNT(*) FROM products")
+    int count();
+
+    @Query("SELECT * FROM products WHERE isFavorite = 1 " +
+            "AND (sortKey > :afterSortKey OR (sortKey = :afterSortKey AND id > :afterId)) " +
+            "ORDER BY sortKey, id LIMIT :limit")
+    List<ProductEntity> getFavoritesPageAfter(String afterSortKey, String afterId, int limit);
+
+    @Query("SELECT * FROM products WHERE isFavorite = 1 ORDER BY sortKey, id LIMIT :limit OFFSET :offset")
+    List<ProductEntity> getFavoritesPageAt(int offset, int limit);
+
+    @Query("SELECT COUNT(*) FROM products WHERE isFavorite = 1")
+    int countFavorites();
+
+    /*
+     * Full-text hits for an FTS4 MATCH expression (see FullTextRanker.toMatchQuery), narrowed by
+     * type and price. Unranked; FullTextRanker orders them by the matchinfo column.
+     */
+    @Query("SELECT products.*, matchinfo(products_fts, 'pcnx') AS matchInfo FROM products " +
+            "JOIN products_fts ON products.rowid = products_fts.docid " +
+            "WHERE products_fts MATCH :match " +
+            "AND (:productType IS NULL OR products.productType = :productType) " +
+            "AND products.price BETWEEN :minPrice AND :maxPrice")
+    List<ProductMatch> searchFullText(String match, String productType, double minPrice, double maxPrice);
+
     @Query("DELETE FROM products")
     void deleteAll();
 }
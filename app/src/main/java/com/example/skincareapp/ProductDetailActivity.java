@@ -70,7 +70,7 @@ public class ProductDetailActivity extends AppCompatActivity {
     private void populateProductDetails(Product product) {
         productName.setText(product.getName());
         productBrand.setText(product.getBrand());
-        productPrice.setText(String.format("$%.2f", product.getPrice()));
+        productPrice.setText(product.getFormattedPrice());
         productDescription.setText(product.getDescription());
         productRatingBar.setRating(product.getRating());
 
@@ -0,0 +1,81 @@
+package com.example.skincareapp;
+
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Fills in fields the product sources leave out (price, rating, skin concerns).
+ *
+ * Each product remembers which enricher last ran on it, and that marker is saved with it in the
+ * catalog snapshot, so a product is enriched once per catalog download rather than on every
+ * search. Values an enricher writes are flagged on the product, and dropped before a different
+ * enricher runs, so it starts from the source data rather than the previous enricher's output.
+ * The default enricher derives mock values from the product's stable ID; swapping in one backed
+ * by real data only takes {@link #setEnricher} and a new enricher ID.
+ */
+public final class ProductEnrichment {
+    private static final String TAG = "ProductEnrichment";
+
+    public interface Enricher {
+        // Saved with each product it enriched; change it whenever the values it produces change
+        String getId();
+
+        // Only fills in what is missing, through Product's fill* setters, and gives the same product
+        // the same values every time
+        void enrich(Product product);
+    }
+
+    private static final ProductEnrichment INSTANCE = new ProductEnrichment();
+
+    private volatile Enricher enricher = new MockProductEnricher();
+
+    private ProductEnrichment() {
+    }
+
+    public static ProductEnrichment getInstance() {
+        return INSTANCE;
+    }
+
+    public void setEnricher(Enricher enricher) {
+        if (enricher != null) {
+            this.enricher = enricher;
+        }
+    }
+
+    public String getEnricherId() {
+        return enricher.getId();
+    }
+
+    // Returns true if the enricher ran, false if the product was already done
+    public boolean enrich(Product product) {
+        Enricher current = enricher;
+        if (product == null || current.getId().equals(product.getEnrichedBy())) {
+            return false;
+        }
+
+        try {
+            product.clearFilledFields();
+            current.enrich(product);
+            product.setEnrichedBy(current.getId());
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error enriching product " + product.getId(), e);
+            return false;
+        }
+    }
+
+    // Number of products the enricher actually ran on
+    public int enrichAll(List<Product> products) {
+        int enriched = 0;
+        if (products == null) {
+            return enriched;
+        }
+        for (Product product : products) {
+            if (enrich(product)) {
+                enriched++;
+            }
+        }
+        return enriched;
+    }
+}
@@ -1,21 +1,36 @@
 package com.example.skincareapp;
 
 import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "products")
+import java.util.Locale;
+
+// (sortKey, id) is the keyset pages are read in; the others serve the type/price and favorite filters
+@Entity(tableName = "products", indices = {
+        @Index(value = {"sortKey", "id"}),
+        @Index(value = {"productType", "price"}),
+        @Index(value = {"isFavorite"})
+})
 
 public class ProductEntity {
     @PrimaryKey
     @NonNull
     private String id;
     private String name;
+    private String brand;
+    private String description;
     private String productType;
     private double price;
     private boolean isFavorite;
     private String imageUrl;
     private float rating;
+    // Lower-cased name; ties are broken by id
+    @NonNull
+    @ColumnInfo(defaultValue = "")
+    private String sortKey = "";
 
     public ProductEntity() {
         // Required empty constructor for Room
@@ -29,12 +44,16 @@ public class ProductEntity {
         this.isFavorite = isFavorite;
         this.imageUrl = imageUrl;
         this.rating = rating;
+        this.sortKey = name != null ? name.toLowerCase(Locale.ROOT) : "";
     }
 
     public ProductEntity(Product product) {
         String productId = product.getId();
         this.id = productId != null ? productId : (product.getName() + product.getImageUrl());
         this.name = product.getName();
+        this.brand = product.getBrand();
+        this.description = product.getDescription();
+        this.sortKey = product.getNameKey();
         this.productType = product.getType();
         this.price = product.getPrice();
         this.isFavorite = false; // default, can toggle later
@@ -42,6 +61,9 @@ public class ProductEntity {
         this.rating = (float) product.getRating(); // cast if needed
     }
     public void setName(String name) { this.name = name; }
+    public void setBrand(String brand) { this.brand = brand; }
+    public void setDescription(String description) { this.description = description; }
+    public void setSortKey(@NonNull String sortKey) { this.sortKey = sortKey; }
     public void setProductType(String productType) { this.productType = productType; }
     public void setPrice(double price) { this.price = price; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
@@ -50,6 +72,9 @@ public class ProductEntity {
     @NonNull public String getId() { return id; }
 
     public String getName() { return name; }
+    public String getBrand() { return brand; }
+    public String getDescription() { return description; }
+    @NonNull public String getSortKey() { return sortKey; }
     public String getProductType() { return productType; }
     public double getPrice() { return price; }
     public boolean isFavorite() { return isFavorite; }
@@ -60,4 +85,26 @@ public class ProductEntity {
         this.id = id;
     }
     public void setFavorite(boolean favorite) { isFavorite = favorite; }
+
+    /**
+     * Rebuilds the product as far as the table stores it. Numeric API IDs are restored as such;
+     * derived IDs come out the same because they hash the stored brand, name and type.
+     */
+    public Product toProduct() {
+        Product product = new Product();
+        try {
+            product.setId(Integer.valueOf(id));
+        } catch (NumberFormatException e) {
+            // Derived ID, recomputed from the fields below
+        }
+        product.setName(name);
+        product.setBrand(brand);
+        product.setDescription(description);
+        product.setType(productType);
+        product.setImageUrl(imageUrl);
+        product.setPrice(price);
+        product.setRating(rating);
+        product.setFavorite(isFavorite);
+        return product;
+    }
 }
@@ -0,0 +1,94 @@
+package com.example.skincareapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Live counts for the search filters. Each facet is counted with every filter applied except its
+ * own, so it tells how many products choosing another value would give. See
+ * {@link ProductSearchIndex#facets}.
+ */
+public class ProductFacets {
+    // Products matching the query and every filter
+    public final int total;
+    // Lower-cased product type -> count, largest first
+    public final Map<String, Integer> typeCounts;
+    // Normalized concern -> count, largest first
+    public final Map<String, Integer> concernCounts;
+    // Cheapest and dearest matching price in cents ignoring the price filter, -1 when nothing matches
+    private final long minPriceCents;
+    private final long maxPriceCents;
+
+    ProductFacets(int total, Map<String, Integer> typeCounts, Map<String, Integer> concernCounts,
+                  long minPriceCents, long maxPriceCents) {
+        this.total = total;
+        this.typeCounts = sortedByCount(typeCounts);
+        this.concernCounts = sortedByCount(concernCounts);
+        this.minPriceCents = minPriceCents;
+        this.maxPriceCents = maxPriceCents;
+    }
+
+    // Products of every type containing the category, matching how searches treat it
+    public int countForCategory(String category) {
+        if (category == null || category.isEmpty()) {
+            int sum = 0;
+            for (int count : typeCounts.values()) {
+                sum += count;
+            }
+            return sum;
+        }
+
+        String key = category.toLowerCase(Locale.ROOT);
+        int sum = 0;
+        for (Map.Entry<String, Integer> entry : typeCounts.entrySet()) {
+            if (entry.getKey().contains(key)) {
+                sum += entry.getValue();
+            }
+        }
+        return sum;
+    }
+
+    public int countForConcern(String concern) {
+        String key = ConcernVocabulary.normalize(concern);
+        Integer count = key != null ? concernCounts.get(key) : null;
+        return count != null ? count : 0;
+    }
+
+    public boolean hasPrices() {
+        return minPriceCents >= 0;
+    }
+
+    public double getMinPrice() {
+        return minPriceCents / 100.0;
+    }
+
+    public double getMaxPrice() {
+        return maxPriceCents / 100.0;
+    }
+
+    private static Map<String, Integer> sortedByCount(Map<String, Integer> counts) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> b.getValue().equals(a.getValue())
+                ? a.getKey().compareTo(b.getKey())
+                : Integer.compare(b.getValue(), a.getValue()));
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return Collections.unmodifiableMap(sorted);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductFacets{" +
+                "total=" + total +
+                ", types=" + typeCounts +
+                ", concerns=" + concernCounts +
+                ", prices=" + (hasPrices() ? getMinPrice() + ".." + getMaxPrice() : "none") +
+                '}';
+    }
+}
@@ -5,31 +5,31 @@ import java.util.List;
 
 public class ProductFilterUtil {
 
+    // Keeps products having every requested concern; the request is encoded once and each product is one mask test
     public static List<Product> localFilterProducts(List<Product> products, List<String> concerns) {
         List<Product> filtered = new ArrayList<>();
         if (products == null || products.isEmpty()) return filtered;  // Defensive check
 
+        ConcernVocabulary.Mask required = ConcernVocabulary.getInstance().encodeQuery(concerns);
+        if (required == null) {
+            return filtered; // Asks for a concern no product has
+        }
+
         for (Product product : products) {
-            if (matchesConcerns(product, concerns)) {
+            if (matchesConcerns(product, required)) {
                 filtered.add(product);
             }
         }
         return filtered;
     }
 
-    private static boolean matchesConcerns(Product product, List<String> concerns) {
+    private static boolean matchesConcerns(Product product, ConcernVocabulary.Mask required) {
         if (product == null) return false;  // null product can't match
 
-        if (concerns == null || concerns.isEmpty()) {
+        if (required.isEmpty()) {
             return true; // No filtering criteria, so everything matches
         }
 
-        List<String> productConcerns = product.getConcerns();  // Safe getter that returns empty list if null
-        for (String concern : concerns) {
-            if (!productConcerns.contains(concern)) {
-                return false;
-            }
-        }
-        return true;
+        return product.getConcernMask().containsAll(required);
     }
 }
@@ -0,0 +1,26 @@
+package com.example.skincareapp;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text shadow of the products table over name, brand and description. Room keeps it in
+ * sync with triggers on products; its docid is the products rowid.
+ */
+@Fts4(contentEntity = ProductEntity.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "products_fts")
+
+public class ProductFtsEntity {
+    private String name;
+    private String brand;
+    private String description;
+
+    public String getName() { return name; }
+    public String getBrand() { return brand; }
+    public String getDescription() { return description; }
+
+    public void setName(String name) { this.name = name; }
+    public void setBrand(String brand) { this.brand = brand; }
+    public void setDescription(String description) { this.description = description; }
+}
@@ -0,0 +1,13 @@
+package com.example.skincareapp;
+
+import androidx.room.Embedded;
+
+/**
+ * A full-text hit: the matching row plus the FTS4 matchinfo('pcnx') blob it is ranked by.
+ */
+public class ProductMatch {
+    @Embedded
+    public ProductEntity product;
+
+    public byte[] matchInfo;
+}
@@ -0,0 +1,47 @@
+package com.example.skincareapp;
+
+import java.util.List;
+
+/**
+ * A fixed-size, ordered result set that {@link PagedProductList} reads one page at a time.
+ *
+ * Implementations are called on a background thread and must return items in a stable order, so
+ * the same position refers to the same product for the lifetime of the source.
+ */
+public interface ProductPagingSource {
+
+    /**
+     * Sort key of the last item of a page. Keyset sources use it to seek straight to the next page
+     * instead of skipping over every earlier row.
+     */
+    final class PageKey {
+        final String sortKey;
+        final String id;
+
+        PageKey(String sortKey, String id) {
+            this.sortKey = sortKey;
+            this.id = id;
+        }
+    }
+
+    final class Page {
+        final List<Product> items;
+        // Key of the last item, or null when the page is empty or the source does not use keys
+        final PageKey lastKey;
+
+        Page(List<Product> items, PageKey lastKey) {
+            this.items = items;
+            this.lastKey = lastKey;
+        }
+    }
+
+    // Total number of items; read once when the paged list is created
+    int count();
+
+    /**
+     * Loads up to loadSize items starting at position. after is the key of the item just before
+     * position when it is known, and null at the start of the list or after a jump past pages
+     * that were never loaded.
+     */
+    Page load(int position, PageKey after, int loadSize);
+}
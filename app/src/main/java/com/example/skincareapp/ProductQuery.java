@@ -0,0 +1,74 @@
+package com.example.skincareapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search criteria checked one product at a time, for products that arrive as a stream instead of
+ * an indexed catalog. Matching follows {@link ProductSearchIndex}: every query word must start a
+ * name or brand word (not match mid-word, see {@link ProductSearchIndex#search}), the category is
+ * a substring of the product type, prices are inclusive and every requested concern must be
+ * present.
+ */
+final class ProductQuery {
+    private final List<String> tokens;
+    private final String category;
+    private final long minCents;
+    private final long maxCents;
+    private final ConcernVocabulary.Mask concerns;
+
+    private ProductQuery(List<String> tokens, String category, long minCents, long maxCents,
+                         ConcernVocabulary.Mask concerns) {
+        this.tokens = tokens;
+        this.category = category;
+        this.minCents = minCents;
+        this.maxCents = maxCents;
+        this.concerns = concerns;
+    }
+
+    static ProductQuery of(String query, String category, Double minPrice, Double maxPrice, List<String> concerns) {
+        // The vocabulary is still filling up while a catalog streams in, so the concerns are
+        // encoded rather than looked up
+        return new ProductQuery(
+                ProductSearchIndex.tokenize(query),
+                category != null && !category.isEmpty() ? category.toLowerCase(Locale.ROOT) : null,
+                ProductSearchIndex.minCents(minPrice),
+                ProductSearchIndex.maxCents(maxPrice),
+                ConcernVocabulary.getInstance().encode(concerns));
+    }
+
+    boolean matches(Product product) {
+        long price = product.getPriceCents();
+        if (price < minCents || price > maxCents) {
+            return false;
+        }
+        if (category != null && !product.getTypeKey().contains(category)) {
+            return false;
+        }
+        if (!product.getConcernMask().containsAll(concerns)) {
+            return false;
+        }
+        if (tokens.isEmpty()) {
+            return true;
+        }
+
+        List<String> words = new ArrayList<>(ProductSearchIndex.tokenize(product.getNameKey()));
+        words.addAll(ProductSearchIndex.tokenize(product.getBrandKey()));
+        for (String token : tokens) {
+            if (!startsAnyWord(words, token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsAnyWord(List<String> words, String prefix) {
+        for (String word : words) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
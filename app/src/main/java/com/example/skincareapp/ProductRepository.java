@@ -1,229 +1,762 @@
 package com.example.skincareapp;
 
 import android.content.Context;
+import android.os.CancellationSignal;
 import android.util.Log;
 
-import androidx.room.Room;
-
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import retrofit2.Call;
-import retrofit2.Callback;
 import retrofit2.Response;
 
 public class ProductRepository {
     private static final String TAG = "ProductRepository";
+    private static final int OPEN_BEAUTY_FACTS_PAGE_SIZE = 24;
+    // Streamed matches are delivered in batches; the first is small so the screen fills quickly
+    private static final int STREAM_FIRST_BATCH_SIZE = 20;
+    private static final int STREAM_BATCH_SIZE = 100;
+
+    // Source names reported in federated search stats
+    public static final String SOURCE_MAKEUP_API = "makeup-api";
+    public static final String SOURCE_OPEN_BEAUTY_FACTS = "open-beauty-facts";
     private final ProductDao productDao;
+    private final FavoriteWriteQueue favoriteWrites;
+    private final CatalogCache catalogCache;
+    private final AppExecutors executors;
+    private final QueryPlanner queryPlanner;
+    private final ProductEnrichment enrichment;
+    private final QueryResultCache queryCache;
+    private ProductSearchIndex searchIndex;
+    private volatile PipelineTimings lastTimings;
 
     public interface ProductCallback {
         void onProductsLoaded(List<Product> products);
         void onError(String errorMessage);
     }
 
+    public interface PagedCallback {
+        void onPagedListReady(PagedProductList products);
+        void onError(String errorMessage);
+    }
+
+    public interface FacetCallback {
+        void onFacets(ProductFacets facets);
+        void onError(String errorMessage);
+    }
+
+    public interface PriceFilterCallback {
+        void onPriceFilterReady(PriceRangeFilter filter);
+        void onError(String errorMessage);
+    }
+
+    public interface StreamCallback {
+        // Products matched since the previous batch, in catalog order
+        void onBatch(List<Product> batch);
+        // The whole catalog has been read; matched counts the products across all batches
+        void onComplete(int matched);
+        // Batches already delivered stand, but no more follow
+        void onError(String errorMessage);
+    }
+
+    // Receives the index a search ran against and its matching ordinals (null for all), on the compute pool
+    interface SearchStage {
+        void accept(ProductSearchIndex index, int[] ordinals, PipelineTimings timings);
+    }
+
     public ProductRepository(Context context) {
-        AppDatabase db = Room.databaseBuilder(context, AppDatabase.class, "products-db").build();
-        productDao = db.productDao();
+        ApiClient.initialize(context);
+        productDao = AppDatabase.getInstance(context).productDao();
+        favoriteWrites = FavoriteWriteQueue.getInstance(context);
+        catalogCache = CatalogCache.getInstance(context);
+        executors = AppExecutors.getInstance();
+        queryPlanner = QueryPlanner.fromResources(context);
+        enrichment = ProductEnrichment.getInstance();
+        queryCache = QueryResultCache.getInstance();
+        SkincareClassifier.install(context);
+    }
+
+    /**
+     * Sets how long the cached catalog is served before a background revalidation is started.
+     */
+    public void setCatalogTtl(long duration, TimeUnit unit) {
+        catalogCache.setTtl(duration, unit);
+    }
+
+    /**
+     * Timings of the most recently completed search, for profiling the pipeline stages.
+     */
+    public PipelineTimings getLastTimings() {
+        return lastTimings;
     }
 
     public void searchProducts(String query, String category, Double minPrice, Double maxPrice, ProductCallback callback) {
-        // Add null safety
+        runSearch(query, category, minPrice, maxPrice, null, callback);
+    }
+
+    /**
+     * Searches with a {@link UserFilter}: the product type is pushed down to the server when it names
+     * exactly one API type (see {@link QueryPlanner}), prices are filtered on the index, and skin
+     * concerns are matched against the index's per-concern bitmaps on the device.
+     */
+    public void searchProducts(UserFilter filter, ProductCallback callback) {
+        if (filter == null) {
+            runSearch(null, null, null, null, null, callback);
+            return;
+        }
+
+        Double minPrice = filter.getMinPrice() > 0 ? filter.getMinPrice() : null;
+        Double maxPrice = filter.getMaxPrice() > 0 ? filter.getMaxPrice() : null;
+        runSearch(null, filter.getProductType(), minPrice, maxPrice, filter.getSkinConcerns(), callback);
+    }
+
+    /**
+     * Same search as {@link #searchProducts(String, String, Double, Double, ProductCallback)}, but
+     * the result is handed over as a paged list that materializes products only as they are shown.
+     */
+    public void searchProductsPaged(String query, String category, Double minPrice, Double maxPrice,
+                                    PagedCallback callback) {
         if (callback == null) {
             Log.w(TAG, "Callback is null, cannot proceed with search");
             return;
         }
 
-        try {
-            Call<List<Product>> call = ApiClient.getInstance()
-                    .getApiService()
-                    .getAllProducts();
+        searchCached(query, category, minPrice, maxPrice, null, null, message -> deliverPagedError(callback, message),
+                (index, ordinals, timings) -> {
+            PagedProductList products = PagedProductList.create(new IndexPagingSource(index, ordinals),
+                    executors.compute(), executors.mainThread());
+            timings.stageDone(PipelineTimings.STAGE_FILTER);
+            Log.d(TAG, "Filtered to " + products.size() + " products");
+            lastTimings = timings;
+            Log.d(TAG, timings.toString());
+            executors.mainThread().execute(() -> callback.onPagedListReady(products));
+        });
+    }
+
+    /**
+     * Counts products per type and concern, and the price bounds, for a search, each facet applying
+     * every filter but its own. The products matching the text query come from the query result
+     * cache, so changing only the filters costs a single counting pass over them and no search.
+     * Facets are only counted over the local catalog, since without it the text query alone would
+     * download the whole catalog; cancelling the signal drops a count no longer wanted.
+     */
+    public void computeFacets(String query, String category, Double minPrice, Double maxPrice,
+                              List<String> concerns, CancellationSignal signal, FacetCallback callback) {
+        if (callback == null) {
+            Log.w(TAG, "Callback is null, cannot compute facets");
+            return;
+        }
+        if (!catalogCache.hasLocalCopy()) {
+            Log.d(TAG, "No local catalog yet, skipping facets");
+            return;
+        }
+
+        searchCached(query, null, null, null, null, signal,
+                message -> executors.mainThread().execute(() -> callback.onError(message)),
+                (index, ordinals, timings) -> {
+            if (isCanceled(signal)) {
+                return;
+            }
+            ProductFacets facets = index.facets(ordinals, category, minPrice, maxPrice, concerns);
+            timings.stageDone(PipelineTimings.STAGE_FILTER);
+            Log.d(TAG, facets + " " + timings);
+            executors.mainThread().execute(() -> {
+                if (!isCanceled(signal)) {
+                    callback.onFacets(facets);
+                }
+            });
+        });
+    }
+
+    /**
+     * Prepares the products matching the text query and category for filtering by price as the
+     * price slider moves. The matches come from the query result cache; the filter then answers
+     * each slider position with binary searches over its price column, without searching again.
+     */
+    public void preparePriceFilter(String query, String category, List<String> concerns,
+                                   PriceFilterCallback callback) {
+        if (callback == null) {
+            Log.w(TAG, "Callback is null, cannot prepare price filter");
+            return;
+        }
+
+        searchCached(query, category, null, null, concerns, null,
+                message -> executors.mainThread().execute(() -> callback.onError(message)),
+                (index, ordinals, timings) -> {
+            PriceRangeFilter filter = index.priceFilter(ordinals);
+            timings.stageDone(PipelineTimings.STAGE_FILTER);
+            Log.d(TAG, "Price filter over " + filter.size() + " products " + timings);
+            executors.mainThread().execute(() -> callback.onPriceFilterReady(filter));
+        });
+    }
+
+    /**
+     * Search-as-you-type over this repository; feed it every edit of the query.
+     */
+    public TypeaheadSearch newTypeaheadSearch(TypeaheadSearch.Options options, TypeaheadSearch.Callback callback) {
+        return new TypeaheadSearch(this, options, callback);
+    }
+
+    /**
+     * True when searches can be answered from the cached catalog without downloading it first.
+     */
+    public boolean hasLocalCatalog() {
+        return catalogCache.hasLocalCopy();
+    }
 
-            call.enqueue(new Callback<List<Product>>() {
+    /**
+     * Searches while the catalog downloads. Without a local catalog it is read with a pull parser
+     * and each product is classified and matched as it is parsed, with matches delivered in
+     * batches on the main thread; memory held here is bounded by the batch size rather than the
+     * catalog size, and the download also becomes the local catalog for later searches. With a
+     * local catalog the indexed search answers in a single batch.
+     */
+    public void streamProducts(String query, String category, Double minPrice, Double maxPrice,
+                               List<String> concerns, StreamCallback callback) {
+        if (callback == null) {
+            Log.w(TAG, "Callback is null, cannot proceed with search");
+            return;
+        }
+
+        if (catalogCache.hasLocalCopy()) {
+            runSearch(query, category, minPrice, maxPrice, concerns, new ProductCallback() {
                 @Override
-                public void onResponse(Call<List<Product>> call, Response<List<Product>> response) {
-                    try {
-                        if (response.isSuccessful() && response.body() != null) {
-                            List<Product> allProducts = response.body();
-                            Log.d(TAG, "Received " + allProducts.size() + " products from API");
-
-                            List<Product> filtered = filterProducts(allProducts, query, category, minPrice, maxPrice);
-                            Log.d(TAG, "Filtered to " + filtered.size() + " products");
-
-                            callback.onProductsLoaded(filtered);
-                        } else {
-                            String errorMsg = "API response unsuccessful. Code: " + response.code();
-                            Log.e(TAG, errorMsg);
-                            callback.onError(errorMsg);
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error processing API response", e);
-                        callback.onError("Error processing response: " + e.getMessage());
-                    }
+                public void onProductsLoaded(List<Product> products) {
+                    callback.onBatch(products);
+                    callback.onComplete(products.size());
                 }
 
                 @Override
-                public void onFailure(Call<List<Product>> call, Throwable t) {
-                    String errorMsg = "Network error: " + (t.getMessage() != null ? t.getMessage() : "Unknown error");
-                    Log.e(TAG, "API call failed", t);
-                    callback.onError(errorMsg);
+                public void onError(String errorMessage) {
+                    callback.onError(errorMessage);
                 }
             });
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating API call", e);
-            callback.onError("Error creating request: " + e.getMessage());
+            return;
         }
+
+        ProductQuery filter = ProductQuery.of(query, category, minPrice, maxPrice, concerns);
+        executors.networkIO().execute(() -> {
+            PipelineTimings timings = new PipelineTimings("search:stream");
+            StreamBatcher batcher = new StreamBatcher(callback);
+            String error = catalogCache.streamCatalog(product -> {
+                if (isEligible(product) && filter.matches(product)) {
+                    batcher.add(product);
+                }
+            });
+            batcher.flush();
+            // Download, parsing and matching interleave, so they are timed as one stage
+            timings.stageDone(PipelineTimings.STAGE_PARSE);
+            lastTimings = timings;
+            Log.d(TAG, "Streamed " + batcher.matched + " matching products; " + timings);
+
+            int matched = batcher.matched;
+            if (error != null) {
+                executors.mainThread().execute(() -> callback.onError(error));
+            } else {
+                executors.mainThread().execute(() -> callback.onComplete(matched));
+            }
+        });
     }
 
-    public void searchProductsByBrand(String brand, ProductCallback callback) {
-        if (callback == null || brand == null || brand.trim().isEmpty()) {
-            Log.w(TAG, "Invalid parameters for brand search");
+    /**
+     * Pages through the products saved in the local database, optionally only favorites.
+     */
+    public void getSavedProductsPaged(boolean favoritesOnly, PagedCallback callback) {
+        if (callback == null) {
+            Log.w(TAG, "Callback is null, cannot load saved products");
             return;
         }
 
-        try {
-            Call<List<Product>> call = ApiClient.getInstance()
-                    .getApiService()
-                    .getProductsByBrand(brand);
+        executors.diskRead().execute(() -> {
+            try {
+                PagedProductList products = PagedProductList.create(new RoomPagingSource(productDao, favoritesOnly),
+                        executors.diskRead(), executors.mainThread());
+                executors.mainThread().execute(() -> callback.onPagedListReady(products));
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading saved products", e);
+                deliverPagedError(callback, "Error loading saved products: " + e.getMessage());
+            }
+        });
+    }
 
-            call.enqueue(new Callback<List<Product>>() {
-                @Override
-                public void onResponse(Call<List<Product>> call, Response<List<Product>> response) {
-                    try {
-                        if (response.isSuccessful() && response.body() != null) {
-                            List<Product> products = response.body();
-                            Log.d(TAG, "Received " + products.size() + " products for brand: " + brand);
-
-                            // Filter for skincare products with null safety
-                            List<Product> skincareProducts = new ArrayList<>();
-                            for (Product product : products) {
-                                if (product != null && product.isSkincareProduct()) {
-                                    assignMockDataIfNeeded(product);
-                                    skincareProducts.add(product);
-                                }
-                            }
-
-                            Log.d(TAG, "Filtered to " + skincareProducts.size() + " skincare products");
-                            callback.onProductsLoaded(skincareProducts);
-                        } else {
-                            String errorMsg = "Failed to fetch products by brand. Code: " + response.code();
-                            Log.e(TAG, errorMsg);
-                            callback.onError(errorMsg);
+    /**
+     * Searches Open Beauty Facts page by page. The first page is loaded before the list is
+     * delivered; while the user scrolls, the next two pages are prefetched with at most two
+     * requests outstanding, and pages far behind the visible window are dropped.
+     */
+    public void searchOpenBeautyFactsPaged(String query, PagedCallback callback) {
+        searchOpenBeautyFactsPaged(query, null, callback);
+    }
+
+    /**
+     * Cancelling the signal cancels the requests in flight and reports nothing; pages of a list
+     * already delivered stop loading once the list is closed.
+     */
+    public void searchOpenBeautyFactsPaged(String query, CancellationSignal signal, PagedCallback callback) {
+        if (callback == null) {
+            Log.w(TAG, "Callback is null, cannot proceed with search");
+            return;
+        }
+
+        PagedProductList.Config config = new PagedProductList.Config()
+                .setPageSize(OPEN_BEAUTY_FACTS_PAGE_SIZE)
+                .setPrefetchPages(2)
+                .setMaxOutstandingLoads(2)
+                .setMaxLoadedPages(6);
+        OpenBeautyFactsPagingSource source = new OpenBeautyFactsPagingSource(
+                ApiClient.getInstance().getOpenBeautyFactsService(), query, OPEN_BEAUTY_FACTS_PAGE_SIZE);
+        if (signal != null) {
+            signal.setOnCancelListener(source::cancel);
+        }
+        executors.networkIO().execute(() -> {
+            try {
+                PagedProductList products = PagedProductList.create(source, config,
+                        executors.networkIO(), executors.mainThread());
+                if (isCanceled(signal)) {
+                    products.close();
+                    return;
+                }
+                Log.d(TAG, "Open Beauty Facts search matched " + products.size() + " products");
+                executors.mainThread().execute(() -> callback.onPagedListReady(products));
+            } catch (Exception e) {
+                if (isCanceled(signal)) {
+                    return;
+                }
+                Log.e(TAG, "Open Beauty Facts search failed", e);
+                deliverPagedError(callback, "Network error: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Sends the query to the makeup API (through the local catalog when it is cached) and to the
+     * first page of Open Beauty Facts in parallel, streaming merged skincare results as each
+     * source answers. A source still outstanding when the budget runs out is reported as timed
+     * out and cancelled, and the results so far are final.
+     */
+    public void searchFederated(String query, long latencyBudget, TimeUnit unit, FederatedSearch.Callback callback) {
+        searchFederated(query, null, null, null, latencyBudget, unit, callback);
+    }
+
+    /**
+     * Federated search with the screen's filters: the makeup API results are filtered on the index,
+     * the Open Beauty Facts page product by product once it arrives.
+     */
+    public void searchFederated(String query, String category, Double minPrice, Double maxPrice,
+                                long latencyBudget, TimeUnit unit, FederatedSearch.Callback callback) {
+        if (callback == null) {
+            Log.w(TAG, "Callback is null, cannot proceed with search");
+            return;
+        }
+
+        ProductQuery filter = ProductQuery.of(null, category, minPrice, maxPrice, null);
+        Map<String, FederatedSearch.Source> sources = new LinkedHashMap<>();
+        sources.put(SOURCE_MAKEUP_API, (q, signal, onProducts, onError) ->
+                searchCached(q, category, minPrice, maxPrice, null, signal, onError,
+                        (index, ordinals, timings) -> onProducts.accept(index.toProducts(ordinals))));
+        sources.put(SOURCE_OPEN_BEAUTY_FACTS, (q, signal, onProducts, onError) ->
+                searchOpenBeautyFacts(q, signal, products -> {
+                    List<Product> matching = new ArrayList<>();
+                    for (Product product : products) {
+                        if (filter.matches(product)) {
+                            matching.add(product);
                         }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error processing brand search response", e);
-                        callback.onError("Error processing response: " + e.getMessage());
                     }
+                    onProducts.accept(matching);
+                }, onError));
+
+        new FederatedSearch(query, unit.toMillis(latencyBudget), sources, callback, executors).start();
+    }
+
+    /**
+     * First page of an Open Beauty Facts search, narrowed to skincare like the makeup API results.
+     * Cancelling the signal abandons the request, cancelling it unless another search shares it.
+     */
+    private void searchOpenBeautyFacts(String query, CancellationSignal signal, Consumer<List<Product>> onProducts,
+                                       Consumer<String> onError) {
+        String terms = query != null ? query.trim() : "";
+        String key = SingleFlight.key("obf-search", terms);
+        SingleFlight singleFlight = ApiClient.getInstance().getSingleFlight();
+        SingleFlight.Listener<ProductSearchResponse> listener = new SingleFlight.Listener<ProductSearchResponse>() {
+            @Override
+            public void onResponse(Response<ProductSearchResponse> response) {
+                if (isCanceled(signal)) {
+                    return;
+                }
+                if (!response.isSuccessful() || response.body() == null) {
+                    onError.accept("Open Beauty Facts response unsuccessful. Code: " + response.code());
+                    return;
                 }
+                List<Product> products = response.body().getProducts();
+                runOnCompute(onError, () -> onProducts.accept(products));
+            }
 
-                @Override
-                public void onFailure(Call<List<Product>> call, Throwable t) {
-                    String errorMsg = "Network error for brand search: " + (t.getMessage() != null ? t.getMessage() : "Unknown error");
-                    Log.e(TAG, "Brand search API call failed", t);
-                    callback.onError(errorMsg);
+            @Override
+            public void onFailure(Exception e) {
+                if (isCanceled(signal)) {
+                    return;
                 }
-            });
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating brand search API call", e);
-            callback.onError("Error creating request: " + e.getMessage());
+                onError.accept("Network error: " + (e.getMessage() != null ? e.getMessage() : "Unknown error"));
+            }
+        };
+        singleFlight.execute(key,
+                () -> ApiClient.getInstance().getOpenBeautyFactsService()
+                        .searchProducts(terms, 1, 1, 1, OPEN_BEAUTY_FACTS_PAGE_SIZE),
+                body -> body.withProducts(selectSkincare(body.getProducts())),
+                listener);
+        if (signal != null) {
+            signal.setOnCancelListener(() -> singleFlight.abandon(key, listener));
         }
     }
 
-    private List<Product> filterProducts(List<Product> products, String query, String category, Double minPrice, Double maxPrice) {
-        List<Product> filtered = new ArrayList<>();
+    /**
+     * Full-text search over the products saved in the local database, best matches first. Type and
+     * price bounds are optional; at most limit products are returned (0 for no limit).
+     */
+    public void searchSavedProducts(String query, String productType, Double minPrice, Double maxPrice,
+                                    int limit, ProductCallback callback) {
+        if (callback == null) {
+            Log.w(TAG, "Callback is null, cannot proceed with search");
+            return;
+        }
 
-        if (products == null || products.isEmpty()) {
-            Log.w(TAG, "No products to filter");
-            return filtered;
+        String match = FullTextRanker.toMatchQuery(query);
+        if (match == null) {
+            deliver(callback, Collections.<Product>emptyList(), new PipelineTimings("saved-search"));
+            return;
         }
 
-        try {
-            for (Product product : products) {
-                // Add comprehensive null safety
-                if (product == null) {
-                    continue;
+        executors.diskRead().execute(() -> {
+            try {
+                PipelineTimings timings = new PipelineTimings("saved-search");
+                List<ProductMatch> matches = productDao.searchFullText(match,
+                        productType != null && !productType.trim().isEmpty() ? productType.trim() : null,
+                        minPrice != null ? minPrice : 0, maxPrice != null ? maxPrice : Double.MAX_VALUE);
+                timings.stageDone(PipelineTimings.STAGE_FILTER);
+
+                List<Product> products = new ArrayList<>();
+                for (ProductEntity entity : FullTextRanker.rank(matches, limit)) {
+                    products.add(entity.toProduct());
                 }
+                deliver(callback, products, timings);
+            } catch (Exception e) {
+                Log.e(TAG, "Error searching saved products", e);
+                deliverError(callback, "Error searching saved products: " + e.getMessage());
+            }
+        });
+    }
 
-                // Skip products with missing essential data
-                if (product.getName() == null || product.getName().trim().isEmpty()) {
-                    continue;
-                }
+    private void runSearch(String query, String category, Double minPrice, Double maxPrice,
+                           List<String> concerns, ProductCallback callback) {
+        // Add null safety
+        if (callback == null) {
+            Log.w(TAG, "Callback is null, cannot proceed with search");
+            return;
+        }
 
-                // Focus on skincare products
-                if (!product.isSkincareProduct()) {
-                    continue;
+        searchCached(query, category, minPrice, maxPrice, concerns, null, message -> deliverError(callback, message),
+                (index, ordinals, timings) -> {
+            List<Product> filtered = index.toProducts(ordinals);
+            timings.stageDone(PipelineTimings.STAGE_FILTER);
+            Log.d(TAG, "Filtered to " + filtered.size() + " products");
+            deliver(callback, filtered, timings);
+        });
+    }
+
+    /**
+     * Runs a search through the query result cache. A search already answered for the current
+     * catalog is handed straight to the stage, without a request or another pass over the
+     * index; otherwise it is resolved, narrowed to the concerns and cached. See
+     * {@link #resolveSearch} for how the signal cancels it.
+     */
+    void searchCached(String query, String category, Double minPrice, Double maxPrice, List<String> concerns,
+                      CancellationSignal signal, Consumer<String> onError, SearchStage stage) {
+        QueryResultCache.Key key = QueryResultCache.Key.of(query, category, minPrice, maxPrice, concerns);
+        long catalogVersion = catalogCache.getVersion();
+        QueryResultCache.Entry cached = queryCache.get(key, catalogVersion);
+        if (cached != null) {
+            PipelineTimings timings = new PipelineTimings("search:cached");
+            Log.d(TAG, "Cache hit for " + key + ", " + cached.size() + " products");
+            runOnCompute(onError, () -> {
+                if (isCanceled(signal)) {
+                    return;
                 }
+                timings.stageDone(PipelineTimings.STAGE_CACHE);
+                stage.accept(cached.index, cached.ordinals, timings);
+            });
+            return;
+        }
 
-                // Assign mock data for missing fields
-                assignMockDataIfNeeded(product);
+        resolveSearch(query, category, minPrice, maxPrice, signal, onError, (index, ordinals, timings) -> {
+            int[] matches = index.filterByConcerns(ordinals, concerns);
+            // Recorded against the version seen before searching, so a catalog swapped in meanwhile misses next time.
+            // A result built from an API response is only served while the response would be fresh
+            long ttl = index.getCatalogVersion() == 0
+                    ? TimeUnit.SECONDS.toMillis(ApiClient.MAKEUP_API_MAX_AGE_SECONDS)
+                    : QueryResultCache.NO_EXPIRY;
+            queryCache.put(key, catalogVersion, index, matches, ttl);
+            stage.accept(index, matches, timings);
+        });
+    }
 
-                // Apply filters with null safety
-                boolean matchesQuery = query == null || query.trim().isEmpty() ||
-                        (product.getName() != null && product.getName().toLowerCase().contains(query.toLowerCase())) ||
-                        (product.getBrand() != null && product.getBrand().toLowerCase().contains(query.toLowerCase()));
+    /**
+     * Plans the search, obtains the index it runs against and hands the matches to the stage.
+     * Once the signal is cancelled no further stage runs and nothing is reported, and a request
+     * still in flight is abandoned (and cancelled, unless another search is waiting on it).
+     */
+    private void resolveSearch(String query, String category, Double minPrice, Double maxPrice,
+                               CancellationSignal signal, Consumer<String> onError, SearchStage stage) {
+        if (isCanceled(signal)) {
+            return;
+        }
+        QueryPlanner.QueryPlan plan = queryPlanner.plan(query, category, catalogCache.hasLocalCopy());
+        Log.d(TAG, "Planned " + plan);
+        PipelineTimings timings = new PipelineTimings("search:" + plan.getEndpoint());
+
+        if (plan.getEndpoint() != QueryPlanner.Endpoint.LOCAL_CATALOG) {
+            fetch(SingleFlight.key("products", plan.getBrand(), plan.getProductType()), () -> callForPlan(plan),
+                    "Network error", "API response unsuccessful", timings, signal, onError, products -> {
+                if (isCanceled(signal)) {
+                    return;
+                }
+                ProductSearchIndex index = ProductSearchIndex.build(products, 0);
+                timings.stageDone(PipelineTimings.STAGE_CLASSIFY);
 
-                boolean matchesCategory = category == null || category.isEmpty() ||
-                        (product.getType() != null && product.getType().toLowerCase().contains(category.toLowerCase()));
+                stage.accept(index, index.searchOrdinals(plan.getResidualQuery(), plan.getResidualCategory(),
+                        minPrice, maxPrice), timings);
+            });
+            return;
+        }
+
+        catalogCache.getCatalog(new CatalogCache.CatalogCallback() {
+            @Override
+            public void onCatalogLoaded(List<Product> allProducts, long version) {
+                timings.stageDone(PipelineTimings.STAGE_CATALOG);
+                runOnCompute(onError, () -> {
+                    if (isCanceled(signal)) {
+                        return;
+                    }
+                    ProductSearchIndex index = indexFor(allProducts, version);
+                    timings.stageDone(PipelineTimings.STAGE_CLASSIFY);
 
-                boolean matchesPrice = (minPrice == null || product.getPrice() >= minPrice) &&
-                        (maxPrice == null || product.getPrice() <= maxPrice);
+                    stage.accept(index, index.searchOrdinals(plan.getResidualQuery(), plan.getResidualCategory(),
+                            minPrice, maxPrice), timings);
+                });
+            }
 
-                if (matchesQuery && matchesCategory && matchesPrice) {
-                    filtered.add(product);
+            @Override
+            public void onError(String errorMessage) {
+                Log.e(TAG, "Catalog unavailable: " + errorMessage);
+                if (!isCanceled(signal)) {
+                    onError.accept(errorMessage);
                 }
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error filtering products", e);
+        });
+    }
+
+    private Call<List<Product>> callForPlan(QueryPlanner.QueryPlan plan) {
+        ProductApiService apiService = ApiClient.getInstance().getApiService();
+        switch (plan.getEndpoint()) {
+            case BY_BRAND_AND_TYPE:
+                return apiService.searchProducts(plan.getBrand(), plan.getProductType());
+            case BY_BRAND:
+                return apiService.getProductsByBrand(plan.getBrand());
+            case BY_TYPE:
+                return apiService.getProductsByType(plan.getProductType());
+            default:
+                return apiService.getAllProducts();
+        }
+    }
+
+    public void searchProductsByBrand(String brand, ProductCallback callback) {
+        if (callback == null || brand == null || brand.trim().isEmpty()) {
+            Log.w(TAG, "Invalid parameters for brand search");
+            return;
         }
 
-        return filtered;
+        PipelineTimings timings = new PipelineTimings("brand:" + brand);
+        fetch(SingleFlight.key("products", brand, null),
+                () -> ApiClient.getInstance().getApiService().getProductsByBrand(brand),
+                "Network error for brand search", "Failed to fetch products by brand", timings,
+                message -> deliverError(callback, message), products -> {
+            // Already narrowed to skincare products by the request's prepare step
+            timings.stageDone(PipelineTimings.STAGE_CLASSIFY);
+            Log.d(TAG, "Received " + products.size() + " skincare products for brand: " + brand);
+            deliver(callback, products, timings);
+        });
     }
 
-    private void assignMockDataIfNeeded(Product product) {
-        if (product == null) {
+    /**
+     * Searches several brands at once and reports one merged, de-duplicated result (or coalesced
+     * partial results, see {@link BrandFanOut.Options#setIncremental}). Brands still loading when
+     * the latency budget runs out are dropped.
+     */
+    public void searchProductsByBrands(List<String> brands, BrandFanOut.Options options, ProductCallback callback) {
+        if (callback == null || brands == null) {
+            Log.w(TAG, "Invalid parameters for multi-brand search");
             return;
         }
 
-        try {
-            // Assign random price if not available or zero
-            if (product.getPrice() <= 0) {
-                product.setPrice(mockPrice());
-            }
+        new BrandFanOut(brands, options, callback, this::selectSkincare, executors).start();
+    }
 
-            // Assign random rating if not available
-            if (product.getRating() <= 0) {
-                product.setRating((float) mockRating());
+    /**
+     * Executes the call on the network pool, joining an identical request already in flight, then
+     * hands the skincare products of the body to the given stage on the compute pool. They are
+     * selected and enriched once per request, before any caller sees them, and shared read-only
+     * by every caller that joined it. Failures are reported to onError with the given message
+     * prefixes.
+     */
+    private void fetch(String key, Supplier<Call<List<Product>>> callFactory, String networkError, String responseError,
+                       PipelineTimings timings, Consumer<String> onError, Consumer<List<Product>> stage) {
+        fetch(key, callFactory, networkError, responseError, timings, null, onError, stage);
+    }
+
+    private void fetch(String key, Supplier<Call<List<Product>>> callFactory, String networkError, String responseError,
+                       PipelineTimings timings, CancellationSignal signal, Consumer<String> onError,
+                       Consumer<List<Product>> stage) {
+        SingleFlight singleFlight = ApiClient.getInstance().getSingleFlight();
+        SingleFlight.Listener<List<Product>> listener = new SingleFlight.Listener<List<Product>>() {
+            @Override
+            public void onResponse(Response<List<Product>> response) {
+                if (isCanceled(signal)) {
+                    return;
+                }
+                timings.recordFetch(response.raw());
+                if (!response.isSuccessful() || response.body() == null) {
+                    String errorMsg = responseError + ". Code: " + response.code();
+                    Log.e(TAG, errorMsg);
+                    onError.accept(errorMsg);
+                    return;
+                }
+
+                List<Product> products = response.body();
+                runOnCompute(onError, () -> stage.accept(products));
             }
 
-            // Add mock skincare concerns
-            if (product.getConcerns() == null || product.getConcerns().isEmpty()) {
-                product.setConcerns(generateSkincareConcerns());
+            @Override
+            public void onFailure(Exception e) {
+                if (isCanceled(signal)) {
+                    return;
+                }
+                String errorMsg = networkError + ": " + (e.getMessage() != null ? e.getMessage() : "Unknown error");
+                Log.e(TAG, "API call failed", e);
+                onError.accept(errorMsg);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error assigning mock data", e);
+        };
+        singleFlight.execute(key, callFactory, this::selectSkincare, listener);
+        if (signal != null) {
+            signal.setOnCancelListener(() -> singleFlight.abandon(key, listener));
         }
     }
 
-    private List<String> generateSkincareConcerns() {
-        List<String> concerns = new ArrayList<>();
-        String[] possibleConcerns = {"acne", "dryness", "aging", "sensitivity", "oiliness", "dark spots"};
+    private static boolean isCanceled(CancellationSignal signal) {
+        return signal != null && signal.isCanceled();
+    }
 
-        try {
-            // Randomly assign 1-3 concerns
-            int numConcerns = 1 + (int)(Math.random() * 3);
-            for (int i = 0; i < numConcerns; i++) {
-                String concern = possibleConcerns[(int)(Math.random() * possibleConcerns.length)];
-                if (!concerns.contains(concern)) {
-                    concerns.add(concern);
-                }
+    // Requests actually sent, and requests served by joining one already in flight
+    public long getExecutedRequestCount() {
+        return ApiClient.getInstance().getSingleFlight().getExecutedCount();
+    }
+
+    public long getCoalescedRequestCount() {
+        return ApiClient.getInstance().getSingleFlight().getCoalescedCount();
+    }
+
+    // Hits, misses and evictions of the query result cache, and what it currently holds
+    public QueryResultCache.Stats getQueryCacheStats() {
+        return queryCache.getStats();
+    }
+
+    // Pending favorite writes and how long recent batches took to commit
+    public FavoriteWriteQueue.Stats getFavoriteWriteStats() {
+        return favoriteWrites.getStats();
+    }
+
+    // Runs a CPU-bound stage on the compute pool, reporting any failure to onError
+    private void runOnCompute(Consumer<String> onError, Runnable stage) {
+        executors.compute().execute(() -> {
+            try {
+                stage.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing products", e);
+                onError.accept("Error processing response: " + e.getMessage());
+            }
+        });
+    }
+
+    // Hands the final, immutable result to the main thread
+    private void deliver(ProductCallback callback, List<Product> products, PipelineTimings timings) {
+        List<Product> result = Collections.unmodifiableList(products);
+        lastTimings = timings;
+        Log.d(TAG, timings.toString());
+        executors.mainThread().execute(() -> callback.onProductsLoaded(result));
+    }
+
+    private void deliverError(ProductCallback callback, String errorMessage) {
+        executors.mainThread().execute(() -> callback.onError(errorMessage));
+    }
+
+    private void deliverPagedError(PagedCallback callback, String errorMessage) {
+        executors.mainThread().execute(() -> callback.onError(errorMessage));
+    }
+
+    // False once a newer catalog has been indexed, and always for an index over one API response,
+    // which the catalog supersedes as soon as it is local
+    synchronized boolean isCurrentIndex(ProductSearchIndex index) {
+        return index == searchIndex;
+    }
+
+    /**
+     * Returns the search index for the given catalog version, building it once per catalog load.
+     * Only named skincare products are indexed, enriched before their prices and concerns are indexed.
+     */
+    private synchronized ProductSearchIndex indexFor(List<Product> catalog, long version) {
+        ProductSearchIndex current = searchIndex;
+        if (current != null && current.getCatalogVersion() == version) {
+            return current;
+        }
+
+        current = ProductSearchIndex.build(selectSkincare(catalog), version);
+        searchIndex = current;
+        queryCache.retainVersion(version);
+        Log.d(TAG, "Indexed " + current.size() + " of " + catalog.size() + " products for catalog v" + version);
+        return current;
+    }
+
+    /**
+     * Keeps named skincare products, enriching any the catalog snapshot has not already enriched.
+     * Also settles each product's lazily computed fields, so the result can be shared across
+     * threads and only read from then on.
+     */
+    private List<Product> selectSkincare(List<Product> products) {
+        List<Product> eligible = new ArrayList<>();
+        for (Product product : products) {
+            if (!isEligible(product)) {
+                continue;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error generating concerns", e);
-            // Fallback to default concern
-            concerns.add("general");
+
+            enrichment.enrich(product);
+            product.getConcernMask();
+            eligible.add(product);
+        }
+        return Collections.unmodifiableList(eligible);
+    }
+
+    private static boolean isEligible(Product product) {
+        // Skip products with missing essential data
+        if (product == null || product.getName() == null || product.getName().trim().isEmpty()) {
+            return false;
         }
 
-        return concerns;
+        // Focus on skincare products
+        return product.isSkincareProduct();
     }
 
     public void toggleFavorite(Product product, boolean isFavorite) {
@@ -232,23 +765,37 @@ public class ProductRepository {
             return;
         }
 
-        Executors.newSingleThreadExecutor().execute(() -> {
-            try {
-                ProductEntity entity = new ProductEntity(product);
-                entity.setFavorite(isFavorite);
-                productDao.insertAll(List.of(entity));
-                Log.d(TAG, "Favorite toggled for product: " + product.getName());
-            } catch (Exception e) {
-                Log.e(TAG, "Error toggling favorite", e);
-            }
-        });
+        FavoritesManager.getInstance().setFavorite(product, isFavorite);
+        Log.d(TAG, "Favorite toggled for product: " + product.getName());
     }
 
-    private double mockPrice() {
-        return 5 + (Math.random() * 45); // $5-$50 range
-    }
+    // Collects streamed matches on the reading thread and posts them to the main thread in batches
+    private final class StreamBatcher {
+        private final StreamCallback callback;
+        private List<Product> batch = new ArrayList<>(STREAM_FIRST_BATCH_SIZE);
+        private int batchSize = STREAM_FIRST_BATCH_SIZE;
+        int matched;
+
+        StreamBatcher(StreamCallback callback) {
+            this.callback = callback;
+        }
+
+        void add(Product product) {
+            batch.add(product);
+            matched++;
+            if (batch.size() >= batchSize) {
+                flush();
+                batchSize = STREAM_BATCH_SIZE;
+            }
+        }
 
-    private double mockRating() {
-        return 3 + (Math.random() * 2); // 3-5 star range
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Product> full = Collections.unmodifiableList(batch);
+            batch = new ArrayList<>(STREAM_BATCH_SIZE);
+            executors.mainThread().execute(() -> callback.onBatch(full));
+        }
     }
 }
\ No newline at end of file
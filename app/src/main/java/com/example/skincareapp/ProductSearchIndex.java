@@ -0,0 +1,682 @@
+package com.example.skincareapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Read-only search index over one catalog version.
+ *
+ * Products are addressed by ordinal (their position in the indexed list). The index keeps a sorted
+ * term dictionary over name and brand words with a postings list per term, postings per product
+ * type, a bitmap of ordinals per skin concern, and a price column sorted for range lookups. A search
+ * intersects these postings instead of scanning and lower-casing every product.
+ */
+public class ProductSearchIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final long catalogVersion;
+    private final Product[] products;
+
+    // Sorted, de-duplicated words from name and brand, with ascending ordinals per word
+    private final String[] terms;
+    private final int[][] termPostings;
+    // Ascending term ids per ordinal, the reverse of termPostings, for narrowing earlier matches
+    private final int[][] termsByOrdinal;
+
+    // Lower-cased product type -> ascending ordinals
+    private final Map<String, int[]> typePostings;
+    // The same types numbered, and each ordinal's type number, for counting facets in one pass
+    private final String[] typeNames;
+    private final int[] typeIdByOrdinal;
+
+    // Prices in cents by ordinal, plus the same prices sorted with the ordinal they belong to
+    private final long[] pricesByOrdinal;
+    private final long[] sortedPrices;
+    private final int[] sortedPriceOrdinals;
+
+    // Ordinals having each concern, indexed by ConcernVocabulary bit; null where no product has it
+    private final BitSet[] concernBitmaps;
+    // Each ordinal's first 64 concern bits, the common case, so facet counting needs no bitmap lookups
+    private final long[] concernLowByOrdinal;
+
+    private ProductSearchIndex(long catalogVersion, Product[] products, String[] terms, int[][] termPostings,
+                               int[][] termsByOrdinal, Map<String, int[]> typePostings, String[] typeNames,
+                               int[] typeIdByOrdinal, long[] pricesByOrdinal, long[] sortedPrices,
+                               int[] sortedPriceOrdinals, BitSet[] concernBitmaps, long[] concernLowByOrdinal) {
+        this.catalogVersion = catalogVersion;
+        this.products = products;
+        this.terms = terms;
+        this.termPostings = termPostings;
+        this.termsByOrdinal = termsByOrdinal;
+        this.typePostings = typePostings;
+        this.typeNames = typeNames;
+        this.typeIdByOrdinal = typeIdByOrdinal;
+        this.pricesByOrdinal = pricesByOrdinal;
+        this.sortedPrices = sortedPrices;
+        this.sortedPriceOrdinals = sortedPriceOrdinals;
+        this.concernBitmaps = concernBitmaps;
+        this.concernLowByOrdinal = concernLowByOrdinal;
+    }
+
+    public static ProductSearchIndex build(List<Product> source, long catalogVersion) {
+        Product[] products = source != null ? source.toArray(new Product[0]) : new Product[0];
+        int count = products.length;
+
+        Map<String, IntList> termLists = new HashMap<>();
+        Map<String, IntList> typeLists = new HashMap<>();
+        long[] pricesByOrdinal = new long[count];
+        ConcernVocabulary vocabulary = ConcernVocabulary.getInstance();
+        List<BitSet> concernLists = new ArrayList<>();
+        long[] concernLowByOrdinal = new long[count];
+
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            Product product = products[ordinal];
+
+            addTerms(termLists, product.getNameKey(), ordinal);
+            addTerms(termLists, product.getBrandKey(), ordinal);
+
+            String type = product.getTypeKey();
+            IntList typeOrdinals = typeLists.get(type);
+            if (typeOrdinals == null) {
+                typeOrdinals = new IntList();
+                typeLists.put(type, typeOrdinals);
+            }
+            typeOrdinals.add(ordinal);
+
+            pricesByOrdinal[ordinal] = product.getPriceCents();
+
+            for (String concern : product.getConcerns()) {
+                int bit = vocabulary.bitFor(concern);
+                if (bit < 0) {
+                    continue;
+                }
+                if (bit < Long.SIZE) {
+                    concernLowByOrdinal[ordinal] |= 1L << bit;
+                }
+                while (concernLists.size() <= bit) {
+                    concernLists.add(null);
+                }
+                BitSet bitmap = concernLists.get(bit);
+                if (bitmap == null) {
+                    bitmap = new BitSet(count);
+                    concernLists.set(bit, bitmap);
+                }
+                bitmap.set(ordinal);
+            }
+        }
+
+        String[] terms = termLists.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] termPostings = new int[terms.length][];
+        IntList[] ordinalTerms = new IntList[count];
+        for (int i = 0; i < terms.length; i++) {
+            termPostings[i] = termLists.get(terms[i]).toArray();
+            // Terms are visited in sorted order, so each ordinal's term ids come out ascending
+            for (int ordinal : termPostings[i]) {
+                if (ordinalTerms[ordinal] == null) {
+                    ordinalTerms[ordinal] = new IntList();
+                }
+                ordinalTerms[ordinal].add(i);
+            }
+        }
+        int[][] termsByOrdinal = new int[count][];
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            termsByOrdinal[ordinal] = ordinalTerms[ordinal] != null ? ordinalTerms[ordinal].toArray() : EMPTY;
+        }
+
+        Map<String, int[]> typePostings = new HashMap<>();
+        String[] typeNames = new String[typeLists.size()];
+        int[] typeIdByOrdinal = new int[count];
+        int typeId = 0;
+        for (Map.Entry<String, IntList> entry : typeLists.entrySet()) {
+            int[] ordinals = entry.getValue().toArray();
+            typePostings.put(entry.getKey(), ordinals);
+            typeNames[typeId] = entry.getKey();
+            for (int ordinal : ordinals) {
+                typeIdByOrdinal[ordinal] = typeId;
+            }
+            typeId++;
+        }
+
+        Integer[] byPrice = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byPrice[i] = i;
+        }
+        Arrays.sort(byPrice, (a, b) -> Long.compare(pricesByOrdinal[a], pricesByOrdinal[b]));
+        long[] sortedPrices = new long[count];
+        int[] sortedPriceOrdinals = new int[count];
+        for (int i = 0; i < count; i++) {
+            sortedPriceOrdinals[i] = byPrice[i];
+            sortedPrices[i] = pricesByOrdinal[byPrice[i]];
+        }
+
+        return new ProductSearchIndex(catalogVersion, products, terms, termPostings, termsByOrdinal, typePostings,
+                typeNames, typeIdByOrdinal, pricesByOrdinal, sortedPrices, sortedPriceOrdinals,
+                concernLists.toArray(new BitSet[0]), concernLowByOrdinal);
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    public int size() {
+        return products.length;
+    }
+
+    public Product get(int ordinal) {
+        return products[ordinal];
+    }
+
+    // Rough heap held by the index structures, not counting the products themselves
+    long approximateBytes() {
+        // Product reference, type, concerns, price by ordinal, sorted price and its ordinal
+        long total = 40L * products.length;
+        for (int i = 0; i < terms.length; i++) {
+            total += 56 + 2L * terms[i].length() + 4L * termPostings[i].length;
+        }
+        for (int[] termIds : termsByOrdinal) {
+            total += 16 + 4L * termIds.length;
+        }
+        return total;
+    }
+
+    /**
+     * Every word of the query must be a prefix of a name or brand word; category matches any
+     * product type containing it. Results keep catalog order.
+     *
+     * Query words used to match anywhere inside the name or brand, so "ream" found "cream". Only
+     * word starts are indexed now, so such mid-word fragments no longer match; typed words and
+     * their beginnings ("cre", "moist") still do. Category matching is unchanged.
+     */
+    public List<Product> search(String query, String category, Double minPrice, Double maxPrice) {
+        return toProducts(searchOrdinals(query, category, minPrice, maxPrice));
+    }
+
+    // Returns null when no filter applies, meaning every ordinal matches
+    int[] searchOrdinals(String query, String category, Double minPrice, Double maxPrice) {
+        int[] candidates = null;
+
+        if (query != null && !query.trim().isEmpty()) {
+            for (String token : tokenize(query)) {
+                int[] postings = prefixPostings(token);
+                candidates = candidates == null ? postings : intersect(candidates, postings);
+                if (candidates.length == 0) {
+                    return EMPTY;
+                }
+            }
+        }
+
+        if (category != null && !category.isEmpty()) {
+            int[] postings = categoryPostings(category.toLowerCase(Locale.ROOT));
+            candidates = candidates == null ? postings : intersect(candidates, postings);
+            if (candidates.length == 0) {
+                return EMPTY;
+            }
+        }
+
+        if (minPrice != null || maxPrice != null) {
+            long min = minCents(minPrice);
+            long max = maxCents(maxPrice);
+            candidates = candidates == null ? priceRange(min, max) : filterByPrice(candidates, min, max);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Narrows ordinals from searchOrdinals to products having every concern, by ANDing one bitmap
+     * per concern. Null ordinals mean every product; no concerns leave the ordinals as they are.
+     */
+    int[] filterByConcerns(int[] ordinals, List<String> concerns) {
+        if (concerns == null || concerns.isEmpty() || (ordinals != null && ordinals.length == 0)) {
+            return ordinals;
+        }
+
+        ConcernVocabulary vocabulary = ConcernVocabulary.getInstance();
+        BitSet matches = null;
+        for (String concern : concerns) {
+            if (ConcernVocabulary.normalize(concern) == null) {
+                continue;
+            }
+            int bit = vocabulary.lookup(concern);
+            BitSet bitmap = bit >= 0 && bit < concernBitmaps.length ? concernBitmaps[bit] : null;
+            if (bitmap == null) {
+                return EMPTY;
+            }
+            if (matches == null) {
+                matches = (BitSet) bitmap.clone();
+            } else {
+                matches.and(bitmap);
+            }
+        }
+
+        if (matches == null) {
+            return ordinals;
+        }
+        if (ordinals == null) {
+            return toArray(matches);
+        }
+
+        int[] result = new int[ordinals.length];
+        int size = 0;
+        for (int ordinal : ordinals) {
+            if (matches.get(ordinal)) {
+                result[size++] = ordinal;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Narrows earlier matches to those whose name or brand words also start with every word of
+     * the query, without going back to the postings. The words starting with a prefix form one
+     * contiguous run of term ids in the sorted dictionary, so each candidate is checked with
+     * integer comparisons against its own few term ids. Null candidates mean every product.
+     */
+    int[] narrow(int[] candidates, String query) {
+        List<String> tokens = tokenize(query);
+        if (candidates == null) {
+            return tokens.isEmpty() ? null : searchOrdinals(query, null, null, null);
+        }
+        if (tokens.isEmpty() || candidates.length == 0) {
+            return candidates;
+        }
+
+        int[] starts = new int[tokens.size()];
+        int[] ends = new int[tokens.size()];
+        for (int t = 0; t < starts.length; t++) {
+            String prefix = tokens.get(t);
+            starts[t] = prefixStart(prefix);
+            ends[t] = prefixEnd(starts[t], prefix);
+            if (starts[t] == ends[t]) {
+                return EMPTY;
+            }
+        }
+
+        int[] result = new int[candidates.length];
+        int size = 0;
+        for (int ordinal : candidates) {
+            if (hasTermInEveryRange(termsByOrdinal[ordinal], starts, ends)) {
+                result[size++] = ordinal;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private static boolean hasTermInEveryRange(int[] termIds, int[] starts, int[] ends) {
+        for (int t = 0; t < starts.length; t++) {
+            boolean found = false;
+            for (int termId : termIds) {
+                if (termId >= starts[t] && termId < ends[t]) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Price columns for a result (null for every product), to filter it by price interactively.
+     * The sorted column is the index's own price column intersected with the result, which keeps
+     * it sorted without sorting again.
+     */
+    PriceRangeFilter priceFilter(int[] candidates) {
+        if (candidates == null) {
+            return new PriceRangeFilter(this, null, pricesByOrdinal, sortedPrices);
+        }
+
+        long[] prices = new long[candidates.length];
+        BitSet members = new BitSet(products.length);
+        for (int i = 0; i < candidates.length; i++) {
+            prices[i] = pricesByOrdinal[candidates[i]];
+            members.set(candidates[i]);
+        }
+
+        long[] sorted = new long[candidates.length];
+        int size = 0;
+        for (int i = 0; i < sortedPriceOrdinals.length && size < sorted.length; i++) {
+            if (members.get(sortedPriceOrdinals[i])) {
+                sorted[size++] = sortedPrices[i];
+            }
+        }
+        return new PriceRangeFilter(this, candidates, prices, sorted);
+    }
+
+    /**
+     * Counts the facets of a search in a single pass over the candidates matching its text query
+     * (null for every product). Each facet applies every filter except its own, so the type counts
+     * say how many results each type would give with the current price range and concerns, and
+     * likewise for concerns and the price bounds.
+     */
+    ProductFacets facets(int[] candidates, String category, Double minPrice, Double maxPrice,
+                         List<String> concerns) {
+        String categoryKey = category != null && !category.isEmpty() ? category.toLowerCase(Locale.ROOT) : null;
+        boolean[] typeInCategory = new boolean[typeNames.length];
+        for (int t = 0; t < typeNames.length; t++) {
+            typeInCategory[t] = categoryKey == null || typeNames[t].contains(categoryKey);
+        }
+
+        long min = minCents(minPrice);
+        long max = maxCents(maxPrice);
+
+        // Required concerns: low bits as one mask, the rest checked against their bitmaps
+        ConcernVocabulary vocabulary = ConcernVocabulary.getInstance();
+        long requiredLow = 0L;
+        List<BitSet> requiredHigh = new ArrayList<>();
+        boolean concernsSatisfiable = true;
+        if (concerns != null) {
+            for (String concern : concerns) {
+                if (ConcernVocabulary.normalize(concern) == null) {
+                    continue;
+                }
+                int bit = vocabulary.lookup(concern);
+                BitSet bitmap = bit >= 0 && bit < concernBitmaps.length ? concernBitmaps[bit] : null;
+                if (bitmap == null) {
+                    concernsSatisfiable = false;
+                } else if (bit < Long.SIZE) {
+                    requiredLow |= 1L << bit;
+                } else {
+                    requiredHigh.add(bitmap);
+                }
+            }
+        }
+
+        int[] typeCounts = new int[typeNames.length];
+        int[] concernCounts = new int[concernBitmaps.length];
+        int total = 0;
+        long resultMin = Long.MAX_VALUE;
+        long resultMax = Long.MIN_VALUE;
+
+        int n = candidates != null ? candidates.length : products.length;
+        for (int i = 0; i < n; i++) {
+            int ordinal = candidates != null ? candidates[i] : i;
+            int type = typeIdByOrdinal[ordinal];
+            long price = pricesByOrdinal[ordinal];
+            long concernLow = concernLowByOrdinal[ordinal];
+
+            boolean inCategory = typeInCategory[type];
+            boolean inPrice = price >= min && price <= max;
+            boolean hasConcerns = concernsSatisfiable && (concernLow & requiredLow) == requiredLow
+                    && hasAll(requiredHigh, ordinal);
+
+            if (inPrice && hasConcerns) {
+                typeCounts[type]++;
+            }
+            if (inCategory && hasConcerns) {
+                resultMin = Math.min(resultMin, price);
+                resultMax = Math.max(resultMax, price);
+            }
+            if (inCategory && inPrice) {
+                for (long bits = concernLow; bits != 0; bits &= bits - 1) {
+                    concernCounts[Long.numberOfTrailingZeros(bits)]++;
+                }
+                for (int bit = Long.SIZE; bit < concernBitmaps.length; bit++) {
+                    if (concernBitmaps[bit] != null && concernBitmaps[bit].get(ordinal)) {
+                        concernCounts[bit]++;
+                    }
+                }
+                if (hasConcerns) {
+                    total++;
+                }
+            }
+        }
+
+        Map<String, Integer> types = new HashMap<>();
+        for (int t = 0; t < typeNames.length; t++) {
+            if (typeCounts[t] > 0) {
+                types.put(typeNames[t], typeCounts[t]);
+            }
+        }
+        Map<String, Integer> concernsByName = new HashMap<>();
+        for (int bit = 0; bit < concernCounts.length; bit++) {
+            if (concernCounts[bit] > 0) {
+                concernsByName.put(vocabulary.nameOf(bit), concernCounts[bit]);
+            }
+        }
+        return new ProductFacets(total, types, concernsByName,
+                resultMin <= resultMax ? resultMin : -1, resultMin <= resultMax ? resultMax : -1);
+    }
+
+    private static boolean hasAll(List<BitSet> bitmaps, int ordinal) {
+        for (BitSet bitmap : bitmaps) {
+            if (!bitmap.get(ordinal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Materializes ordinals from searchOrdinals, with null meaning every product
+    List<Product> toProducts(int[] ordinals) {
+        if (ordinals == null) {
+            return new ArrayList<>(Arrays.asList(products));
+        }
+        if (ordinals.length == 0) {
+            return Collections.emptyList();
+        }
+
+        List<Product> result = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) {
+            result.add(products[ordinal]);
+        }
+        return result;
+    }
+
+    private int[] prefixPostings(String prefix) {
+        int start = prefixStart(prefix);
+        int end = prefixEnd(start, prefix);
+
+        if (end == start) {
+            return EMPTY;
+        }
+        if (end - start == 1) {
+            return termPostings[start];
+        }
+
+        BitSet union = new BitSet(products.length);
+        for (int i = start; i < end; i++) {
+            for (int ordinal : termPostings[i]) {
+                union.set(ordinal);
+            }
+        }
+        return toArray(union);
+    }
+
+    // Id of the first term that is >= prefix; every term starting with it follows contiguously
+    private int prefixStart(String prefix) {
+        int position = Arrays.binarySearch(terms, prefix);
+        return position >= 0 ? position : -(position + 1);
+    }
+
+    private int prefixEnd(int start, String prefix) {
+        int end = start;
+        while (end < terms.length && terms[end].startsWith(prefix)) {
+            end++;
+        }
+        return end;
+    }
+
+    private int[] categoryPostings(String category) {
+        int[] exact = typePostings.get(category);
+        BitSet union = null;
+
+        // Categories are matched by substring, but there are only a few dozen distinct types
+        for (Map.Entry<String, int[]> entry : typePostings.entrySet()) {
+            if (entry.getValue() == exact || !entry.getKey().contains(category)) {
+                continue;
+            }
+            if (union == null) {
+                union = new BitSet(products.length);
+                if (exact != null) {
+                    for (int ordinal : exact) {
+                        union.set(ordinal);
+                    }
+                }
+            }
+            for (int ordinal : entry.getValue()) {
+                union.set(ordinal);
+            }
+        }
+
+        if (union != null) {
+            return toArray(union);
+        }
+        return exact != null ? exact : EMPTY;
+    }
+
+    private int[] priceRange(long min, long max) {
+        int from = lowerBound(sortedPrices, min);
+        int to = upperBound(sortedPrices, max);
+        if (from >= to) {
+            return EMPTY;
+        }
+
+        int[] ordinals = Arrays.copyOfRange(sortedPriceOrdinals, from, to);
+        Arrays.sort(ordinals);
+        return ordinals;
+    }
+
+    private int[] filterByPrice(int[] candidates, long min, long max) {
+        int[] result = new int[candidates.length];
+        int size = 0;
+        for (int ordinal : candidates) {
+            long price = pricesByOrdinal[ordinal];
+            if (price >= min && price <= max) {
+                result[size++] = ordinal;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    // Dollar bounds become inclusive cent bounds, so 5.001 excludes a 5.00 product
+    static long minCents(Double minPrice) {
+        return minPrice != null ? (long) Math.ceil(minPrice * 100 - 1e-6) : Long.MIN_VALUE;
+    }
+
+    static long maxCents(Double maxPrice) {
+        return maxPrice != null ? (long) Math.floor(maxPrice * 100 + 1e-6) : Long.MAX_VALUE;
+    }
+
+    // First index whose value is >= key
+    static int lowerBound(long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First index whose value is > key
+    static int upperBound(long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private static int[] toArray(BitSet bits) {
+        int[] result = new int[bits.cardinality()];
+        int size = 0;
+        for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) {
+            result[size++] = bit;
+        }
+        return result;
+    }
+
+    private static void addTerms(Map<String, IntList> termLists, String lowerText, int ordinal) {
+        for (String term : tokenize(lowerText)) {
+            IntList postings = termLists.get(term);
+            if (postings == null) {
+                postings = new IntList();
+                termLists.put(term, postings);
+            }
+            postings.addIfLast(ordinal);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // Minimal growable int array so postings are built without boxing
+    private static final class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        // Ordinals arrive in ascending order, so a repeated word in one product is a repeated tail
+        void addIfLast(int value) {
+            if (size == 0 || data[size - 1] != value) {
+                add(value);
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
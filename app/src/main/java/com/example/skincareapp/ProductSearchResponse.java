@@ -15,6 +15,9 @@ public class ProductSearchResponse {
     @SerializedName("page_count")
     private int pageCount;
 
+    @SerializedName("page_size")
+    private int pageSize;
+
     @SerializedName("products")
     private List<Product> products;
     public int getCount() {
@@ -23,10 +26,29 @@ public class ProductSearchResponse {
     public int getPage() {
         return page;
     }
+    // Number of products on this page, despite the name
     public int getPageCount() {
         return pageCount;
     }
+    public int getPageSize() {
+        return pageSize;
+    }
+    // Pages needed to cover every match at this response's page size
+    public int getTotalPages() {
+        return pageSize > 0 ? (count + pageSize - 1) / pageSize : 0;
+    }
     public List<Product> getProducts() {
         return products != null ? products : new ArrayList<>();
     }
+
+    // Same page with its products replaced, e.g. by the ones kept after filtering
+    ProductSearchResponse withProducts(List<Product> products) {
+        ProductSearchResponse copy = new ProductSearchResponse();
+        copy.count = count;
+        copy.page = page;
+        copy.pageCount = pageCount;
+        copy.pageSize = pageSize;
+        copy.products = products;
+        return copy;
+    }
 }
@@ -0,0 +1,69 @@
+package com.example.skincareapp;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Runs {@link Product#normalize()} as soon as Gson has bound a product, so trimming, lower-casing
+ * and price parsing happen once per product at deserialization rather than in every getter.
+ */
+public class ProductTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() != Product.class) {
+            return null;
+        }
+
+        TypeAdapter<Product> delegate = gson.getDelegateAdapter(this, TypeToken.get(Product.class));
+        return (TypeAdapter<T>) new TypeAdapter<Product>() {
+            @Override
+            public void write(JsonWriter out, Product value) throws IOException {
+                delegate.write(out, value);
+            }
+
+            @Override
+            public Product read(JsonReader in) throws IOException {
+                Product product = delegate.read(in);
+                if (product != null) {
+                    product.normalize();
+                }
+                return product;
+            }
+        };
+    }
+
+    /**
+     * Reads a product ID that may arrive as a number or a string. Open Beauty Facts sends barcodes
+     * that do not fit an Integer; those read as null so the product gets a derived ID instead of
+     * failing the whole response.
+     */
+    public static final class LenientIdAdapter extends TypeAdapter<Integer> {
+        @Override
+        public void write(JsonWriter out, Integer value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public Integer read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String raw = in.nextString();
+            try {
+                return Integer.valueOf(raw.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.skincareapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Chooses where a product search is answered.
+ *
+ * Once the full catalog is cached locally every search runs against the local index. Before that,
+ * a search scoped to a product type or brand the makeup API can filter on is pushed down to the
+ * narrowest matching endpoint, so only that slice is downloaded; whatever the server cannot
+ * express is kept as a residual filter applied on the device.
+ */
+public class QueryPlanner {
+    private static final String TAG = "QueryPlanner";
+
+    public enum Endpoint {
+        LOCAL_CATALOG,
+        BY_TYPE,
+        BY_BRAND,
+        BY_BRAND_AND_TYPE
+    }
+
+    public static final class QueryPlan {
+        private final Endpoint endpoint;
+        private final String brand;
+        private final String productType;
+        private final String residualQuery;
+        private final String residualCategory;
+
+        QueryPlan(Endpoint endpoint, String brand, String productType, String residualQuery, String residualCategory) {
+            this.endpoint = endpoint;
+            this.brand = brand;
+            this.productType = productType;
+            this.residualQuery = residualQuery;
+            this.residualCategory = residualCategory;
+        }
+
+        public Endpoint getEndpoint() {
+            return endpoint;
+        }
+
+        // Server-side brand parameter, or null
+        public String getBrand() {
+            return brand;
+        }
+
+        // Server-side product_type parameter, or null
+        public String getProductType() {
+            return productType;
+        }
+
+        // Text filter still to apply on the device, or null when the server covered it
+        public String getResidualQuery() {
+            return residualQuery;
+        }
+
+        // Category filter still to apply on the device, or null when the server covered it
+        public String getResidualCategory() {
+            return residualCategory;
+        }
+
+        @Override
+        public String toString() {
+            return "QueryPlan{" + endpoint +
+                    ", brand=" + brand +
+                    ", productType=" + productType +
+                    ", residualQuery=" + residualQuery +
+                    ", residualCategory=" + residualCategory +
+                    '}';
+        }
+    }
+
+    // Types the server can filter on without losing products a local search would match
+    private final Set<String> apiProductTypes;
+    private final Set<String> apiBrands;
+
+    public QueryPlanner(Collection<String> apiProductTypes, Collection<String> apiBrands) {
+        this.apiProductTypes = exactTypes(normalizedSet(apiProductTypes));
+        this.apiBrands = normalizedSet(apiBrands);
+    }
+
+    public static QueryPlanner fromResources(Context context) {
+        try {
+            return new QueryPlanner(
+                    Arrays.asList(context.getResources().getStringArray(R.array.api_product_types)),
+                    Arrays.asList(context.getResources().getStringArray(R.array.api_brands)));
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading API vocabularies, planning every search locally", e);
+            return new QueryPlanner(Collections.<String>emptyList(), Collections.<String>emptyList());
+        }
+    }
+
+    /**
+     * Price filters are always residual, since the makeup API has no price parameters.
+     */
+    public QueryPlan plan(String query, String category, boolean catalogAvailable) {
+        String trimmedQuery = query != null && !query.trim().isEmpty() ? query.trim() : null;
+        String trimmedCategory = category != null && !category.trim().isEmpty() ? category.trim() : null;
+
+        if (catalogAvailable) {
+            return new QueryPlan(Endpoint.LOCAL_CATALOG, null, null, trimmedQuery, trimmedCategory);
+        }
+
+        // The server matches product_type exactly while local searches match any type containing the
+        // category, so only push down categories that name a type no other type contains
+        String productType = trimmedCategory != null ? toApiValue(trimmedCategory) : null;
+        if (productType != null && !apiProductTypes.contains(productType)) {
+            productType = null;
+        }
+
+        // A query that is exactly a known brand is answered by the brand parameter
+        String brand = trimmedQuery != null ? trimmedQuery.toLowerCase(Locale.ROOT) : null;
+        if (brand != null && !apiBrands.contains(brand)) {
+            brand = null;
+        }
+
+        String residualQuery = brand != null ? null : trimmedQuery;
+        String residualCategory = productType != null ? null : trimmedCategory;
+
+        if (brand != null && productType != null) {
+            return new QueryPlan(Endpoint.BY_BRAND_AND_TYPE, brand, productType, residualQuery, residualCategory);
+        }
+        if (productType != null) {
+            return new QueryPlan(Endpoint.BY_TYPE, null, productType, residualQuery, residualCategory);
+        }
+        if (brand != null) {
+            return new QueryPlan(Endpoint.BY_BRAND, brand, null, residualQuery, residualCategory);
+        }
+        // Nothing narrower than the whole catalog, which the catalog cache downloads and keeps
+        return new QueryPlan(Endpoint.LOCAL_CATALOG, null, null, trimmedQuery, trimmedCategory);
+    }
+
+    private static String toApiValue(String value) {
+        return value.trim().toLowerCase(Locale.ROOT).replace(' ', '_');
+    }
+
+    // Drops types contained in another type, e.g. "liner" when "eyeliner" exists
+    private static Set<String> exactTypes(Set<String> types) {
+        Set<String> exact = new HashSet<>();
+        for (String type : types) {
+            boolean contained = false;
+            for (String other : types) {
+                if (!other.equals(type) && other.contains(type)) {
+                    contained = true;
+                    break;
+                }
+            }
+            if (!contained) {
+                exact.add(type);
+            }
+        }
+        return exact;
+    }
+
+    private static Set<String> normalizedSet(Collection<String> values) {
+        Set<String> result = new HashSet<>();
+        if (values != null) {
+            for (String value : values) {
+                if (value != null && !value.trim().isEmpty()) {
+                    result.add(value.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.skincareapp;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Least-recently-used cache of search results, so bouncing between a few filter combinations
+ * does not recompute them. Results are held as index ordinals, four bytes per match. An entry is
+ * only served for the catalog version it was computed against, and one computed from an API
+ * response only for as long as that response is fresh. The cache is bounded both by entry count
+ * and by an estimate of the bytes it keeps alive.
+ */
+public class QueryResultCache {
+    private static final String TAG = "QueryResultCache";
+
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+    public static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024;
+    // Entries computed against the local catalog live until the catalog changes
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    // Rough per-entry cost of the key, entry and map node
+    private static final long ENTRY_OVERHEAD_BYTES = 160;
+
+    private static QueryResultCache instance;
+
+    /**
+     * A search reduced to what decides its result: query words lower-cased, de-duplicated and
+     * sorted (each must match on its own, so order does not matter), the lower-cased category,
+     * price bounds in cents and the sorted concerns.
+     */
+    public static final class Key {
+        private final String query;
+        private final String category;
+        private final long minCents;
+        private final long maxCents;
+        private final String concerns;
+
+        private Key(String query, String category, long minCents, long maxCents, String concerns) {
+            this.query = query;
+            this.category = category;
+            this.minCents = minCents;
+            this.maxCents = maxCents;
+            this.concerns = concerns;
+        }
+
+        public static Key of(String query, String category, Double minPrice, Double maxPrice, List<String> concerns) {
+            String normalizedCategory = category != null ? category.trim().toLowerCase(Locale.ROOT) : "";
+
+            TreeSet<String> concernSet = new TreeSet<>();
+            if (concerns != null) {
+                for (String concern : concerns) {
+                    String key = ConcernVocabulary.normalize(concern);
+                    if (key != null) {
+                        concernSet.add(key);
+                    }
+                }
+            }
+
+            return new Key(String.join(" ", new TreeSet<>(ProductSearchIndex.tokenize(query))), normalizedCategory,
+                    ProductSearchIndex.minCents(minPrice), ProductSearchIndex.maxCents(maxPrice),
+                    String.join("|", concernSet));
+        }
+
+        long approximateBytes() {
+            return 2L * (query.length() + category.length() + concerns.length());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return minCents == key.minCents
+                    && maxCents == key.maxCents
+                    && query.equals(key.query)
+                    && category.equals(key.category)
+                    && concerns.equals(key.concerns);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, category, minCents, maxCents, concerns);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{query='" + query + "', category='" + category + "', cents=" + minCents + ".." + maxCents +
+                    ", concerns='" + concerns + "'}";
+        }
+    }
+
+    // A cached result: the index it refers to and its matching ordinals, null meaning every product
+    public static final class Entry {
+        public final long catalogVersion;
+        final ProductSearchIndex index;
+        final int[] ordinals;
+        final long bytes;
+        // SystemClock.elapsedRealtime() after which the entry is no longer served
+        final long expiresAt;
+
+        Entry(long catalogVersion, ProductSearchIndex index, int[] ordinals, long bytes, long expiresAt) {
+            this.catalogVersion = catalogVersion;
+            this.index = index;
+            this.ordinals = ordinals;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+
+        public int size() {
+            return ordinals != null ? ordinals.length : index.size();
+        }
+    }
+
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        // Entries dropped because the catalog changed since they were computed, or they expired
+        public final long invalidations;
+        public final int entries;
+        public final long bytes;
+
+        Stats(long hits, long misses, long evictions, long invalidations, int entries, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups > 0 ? (double) hits / lookups : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return "QueryResultCache.Stats{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", invalidations=" + invalidations +
+                    ", entries=" + entries +
+                    ", bytes=" + bytes +
+                    '}';
+        }
+    }
+
+    // Guarded by itself; access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    private QueryResultCache() {
+    }
+
+    public static synchronized QueryResultCache getInstance() {
+        if (instance == null) {
+            instance = new QueryResultCache();
+        }
+        return instance;
+    }
+
+    public void setLimits(int maxEntries, long maxBytes) {
+        synchronized (entries) {
+            this.maxEntries = Math.max(1, maxEntries);
+            this.maxBytes = Math.max(0, maxBytes);
+            trim();
+        }
+    }
+
+    /**
+     * Returns the result cached for the key if it was computed against this catalog version and
+     * has not expired. An entry from any other version, or past its expiry, is dropped.
+     */
+    public Entry get(Key key, long catalogVersion) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && (entry.catalogVersion != catalogVersion
+                    || SystemClock.elapsedRealtime() >= entry.expiresAt)) {
+                remove(key);
+                invalidations++;
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry;
+        }
+    }
+
+    // ttlMillis is how long the entry may be served, NO_EXPIRY for as long as its catalog version
+    void put(Key key, long catalogVersion, ProductSearchIndex index, int[] ordinals, long ttlMillis) {
+        // An index built for one API response is only kept alive by its entries, so they pay for it
+        long indexBytes = index.getCatalogVersion() == 0 ? index.approximateBytes() : 0;
+        long entryBytes = ENTRY_OVERHEAD_BYTES + key.approximateBytes()
+                + (ordinals != null ? 4L * ordinals.length : 0) + indexBytes;
+        synchronized (entries) {
+            if (entryBytes > maxBytes) {
+                Log.d(TAG, "Not caching " + key + ", " + entryBytes + " bytes");
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            long expiresAt = ttlMillis >= NO_EXPIRY - now ? NO_EXPIRY : now + Math.max(0, ttlMillis);
+            remove(key);
+            entries.put(key, new Entry(catalogVersion, index, ordinals, entryBytes, expiresAt));
+            bytes += entryBytes;
+            trim();
+        }
+    }
+
+    // Drops every entry computed against another catalog version
+    public void retainVersion(long catalogVersion) {
+        synchronized (entries) {
+            List<Key> stale = new ArrayList<>();
+            for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().catalogVersion != catalogVersion) {
+                    stale.add(entry.getKey());
+                }
+            }
+            for (Key key : stale) {
+                remove(key);
+            }
+            invalidations += stale.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (entries) {
+            return new Stats(hits, misses, evictions, invalidations, entries.size(), bytes);
+        }
+    }
+
+    // Called with the lock held
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    // Called with the lock held; evicts least recently used entries until both limits hold
+    private void trim() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().bytes;
+            iterator.remove();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.skincareapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages saved products out of Room in (sortKey, id) order. Each page after the first seeks from
+ * the previous page's last key, so reading deep into the table costs the same as the first page.
+ */
+class RoomPagingSource implements ProductPagingSource {
+    private final ProductDao productDao;
+    private final boolean favoritesOnly;
+
+    RoomPagingSource(ProductDao productDao, boolean favoritesOnly) {
+        this.productDao = productDao;
+        this.favoritesOnly = favoritesOnly;
+    }
+
+    @Override
+    public int count() {
+        return favoritesOnly ? productDao.countFavorites() : productDao.count();
+    }
+
+    @Override
+    public Page load(int position, PageKey after, int loadSize) {
+        List<ProductEntity> rows;
+        if (position == 0 || after != null) {
+            String sortKey = after != null ? after.sortKey : "";
+            String id = after != null ? after.id : "";
+            rows = favoritesOnly
+                    ? productDao.getFavoritesPageAfter(sortKey, id, loadSize)
+                    : productDao.getPageAfter(sortKey, id, loadSize);
+        } else {
+            rows = favoritesOnly
+                    ? productDao.getFavoritesPageAt(position, loadSize)
+                    : productDao.getPageAt(position, loadSize);
+        }
+
+        List<Product> products = new ArrayList<>(rows.size());
+        for (ProductEntity row : rows) {
+            products.add(row.toProduct());
+        }
+        PageKey lastKey = null;
+        if (!rows.isEmpty()) {
+            ProductEntity last = rows.get(rows.size() - 1);
+            lastKey = new PageKey(last.getSortKey(), last.getId());
+        }
+        return new Page(products, lastKey);
+    }
+}
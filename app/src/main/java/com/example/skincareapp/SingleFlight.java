@@ -0,0 +1,200 @@
+package com.example.skincareapp;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Coalesces identical concurrent API requests.
+ *
+ * The first request for a key creates and executes the {@link Call}; requests for the same key
+ * that arrive while it is in flight are attached as extra listeners and receive the same response.
+ * Once the call completes the key is released, so later requests go to the network (or HTTP cache)
+ * again.
+ *
+ * Every listener gets the same body object, so listeners must treat it as read-only. Work that
+ * changes the body, such as enriching products, belongs in the flight's prepare step, which runs
+ * once before the body is handed out.
+ */
+public class SingleFlight {
+    private static final String TAG = "SingleFlight";
+
+    public interface Listener<T> {
+        // Called on a network thread
+        void onResponse(Response<T> response);
+        void onFailure(Exception e);
+    }
+
+    private static final class Flight<T> {
+        final List<Listener<T>> listeners = new ArrayList<>();
+        // Applied once to a successful body before any listener sees it; null for none
+        Function<T, T> prepare;
+        Call<T> call;
+        boolean cancelled;
+    }
+
+    private final Executor executor;
+    // Guarded by itself
+    private final Map<String, Flight<?>> flights = new HashMap<>();
+    private final AtomicLong executedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public SingleFlight(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Builds a normalized key, so "Clinique " and "clinique" share one request.
+     */
+    public static String key(String endpoint, String... params) {
+        StringBuilder builder = new StringBuilder(endpoint);
+        for (String param : params) {
+            builder.append('|').append(param != null ? param.trim().toLowerCase(Locale.ROOT) : "");
+        }
+        return builder.toString();
+    }
+
+    public <T> void execute(String key, Supplier<Call<T>> callFactory, Listener<T> listener) {
+        execute(key, callFactory, null, listener);
+    }
+
+    /**
+     * Like {@link #execute(String, Supplier, Listener)}, with prepare run once on the network thread
+     * on a successful body; every listener then receives its result. Requests joining a flight get
+     * the preparation of the request that started it, so all callers of a key must prepare alike.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void execute(String key, Supplier<Call<T>> callFactory, Function<T, T> prepare, Listener<T> listener) {
+        Flight<T> flight;
+        synchronized (flights) {
+            Flight<T> existing = (Flight<T>) flights.get(key);
+            if (existing != null) {
+                existing.listeners.add(listener);
+                coalescedCount.incrementAndGet();
+                Log.d(TAG, "Joined in-flight request " + key);
+                return;
+            }
+
+            flight = new Flight<>();
+            flight.prepare = prepare;
+            flight.listeners.add(listener);
+            flights.put(key, flight);
+        }
+
+        executedCount.incrementAndGet();
+        executor.execute(() -> run(key, flight, callFactory));
+    }
+
+    /**
+     * Blocking form of {@link #execute}. Must not be called from the executor this instance runs
+     * calls on, or a full pool could wait on itself.
+     */
+    public <T> Response<T> await(String key, Supplier<Call<T>> callFactory) throws IOException {
+        CompletableFuture<Response<T>> future = new CompletableFuture<>();
+        execute(key, callFactory, new Listener<T>() {
+            @Override
+            public void onResponse(Response<T> response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause != null ? cause.getMessage() : "Request failed", cause);
+        }
+    }
+
+    /**
+     * Stops delivering to the listener. The underlying call is only cancelled when no other
+     * listener is still waiting for it.
+     */
+    public void abandon(String key, Listener<?> listener) {
+        synchronized (flights) {
+            Flight<?> flight = flights.get(key);
+            if (flight == null || !flight.listeners.remove(listener) || !flight.listeners.isEmpty()) {
+                return;
+            }
+
+            flight.cancelled = true;
+            flights.remove(key);
+            if (flight.call != null) {
+                flight.call.cancel();
+            }
+        }
+    }
+
+    // Number of requests that actually went out
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    // Number of requests answered by joining one already in flight
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private <T> void run(String key, Flight<T> flight, Supplier<Call<T>> callFactory) {
+        Response<T> response = null;
+        Exception failure = null;
+        try {
+            Call<T> call = callFactory.get();
+            synchronized (flights) {
+                flight.call = call;
+                if (flight.cancelled) {
+                    call.cancel();
+                }
+            }
+            response = call.execute();
+            if (flight.prepare != null && response.isSuccessful() && response.body() != null) {
+                response = Response.success(flight.prepare.apply(response.body()), response.raw());
+            }
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        List<Listener<T>> listeners;
+        synchronized (flights) {
+            flights.remove(key, flight);
+            listeners = new ArrayList<>(flight.listeners);
+        }
+
+        for (Listener<T> listener : listeners) {
+            try {
+                if (failure == null) {
+                    listener.onResponse(response);
+                } else {
+                    listener.onFailure(failure);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Listener failed for " + key, e);
+            }
+        }
+    }
+}
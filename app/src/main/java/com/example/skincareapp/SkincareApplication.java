@@ -0,0 +1,17 @@
+package com.example.skincareapp;
+
+import android.app.Application;
+
+/**
+ * Starts process-wide work early, while the access key screen is still showing.
+ */
+public class SkincareApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ApiClient.initialize(this);
+        AppDatabase.warmUp(this);
+        FavoritesManager.initialize(this);
+    }
+}
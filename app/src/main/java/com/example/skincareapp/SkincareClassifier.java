@@ -0,0 +1,222 @@
+package com.example.skincareapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a product is skincare by matching its type and name against a keyword
+ * dictionary and its brand against a brand dictionary.
+ *
+ * Both dictionaries are compiled once into a single Aho-Corasick automaton, stored as a dense
+ * transition table, so each field is classified in one pass regardless of dictionary size. The
+ * dictionaries live in res/values/arrays.xml and are installed with {@link #install(Context)}.
+ */
+public final class SkincareClassifier {
+    private static final String TAG = "SkincareClassifier";
+
+    // Output flags: which dictionary a pattern ending in a state came from
+    static final int KEYWORD = 1;
+    static final int BRAND = 2;
+
+    private static final AtomicInteger generations = new AtomicInteger();
+    private static volatile SkincareClassifier defaultInstance =
+            compile(Collections.<String>emptyList(), Collections.<String>emptyList());
+    private static boolean installed;
+
+    // Lets products tell whether their cached classification came from this classifier
+    private final int generation;
+    private final int[][] transitions;
+    private final int[] outputs;
+    // ASCII characters map through a table; anything else is looked up in a sorted array
+    private final int[] asciiClasses;
+    private final char[] extraChars;
+    private final int[] extraClasses;
+
+    private SkincareClassifier(int[][] transitions, int[] outputs, int[] asciiClasses,
+                               char[] extraChars, int[] extraClasses) {
+        this.generation = generations.incrementAndGet();
+        this.transitions = transitions;
+        this.outputs = outputs;
+        this.asciiClasses = asciiClasses;
+        this.extraChars = extraChars;
+        this.extraClasses = extraClasses;
+    }
+
+    public static SkincareClassifier getDefault() {
+        return defaultInstance;
+    }
+
+    public static void setDefault(SkincareClassifier classifier) {
+        if (classifier != null) {
+            defaultInstance = classifier;
+        }
+    }
+
+    /**
+     * Compiles the keyword and brand dictionaries from resources and makes them the default.
+     * Products classified by an earlier classifier are re-classified on their next lookup.
+     */
+    public static synchronized void install(Context context) {
+        if (installed) {
+            return;
+        }
+
+        try {
+            String[] keywords = context.getResources().getStringArray(R.array.skincare_keywords);
+            String[] brands = context.getResources().getStringArray(R.array.skincare_brands);
+            setDefault(compile(Arrays.asList(keywords), Arrays.asList(brands)));
+            installed = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading skincare dictionaries", e);
+        }
+    }
+
+    public static SkincareClassifier compile(Collection<String> keywords, Collection<String> brands) {
+        List<String> patterns = new ArrayList<>();
+        List<Integer> flags = new ArrayList<>();
+        addPatterns(keywords, KEYWORD, patterns, flags);
+        addPatterns(brands, BRAND, patterns, flags);
+
+        // Character classes: 0 is "not in any pattern", which always falls back toward the root
+        TreeSet<Character> alphabet = new TreeSet<>();
+        for (String pattern : patterns) {
+            for (int i = 0; i < pattern.length(); i++) {
+                alphabet.add(pattern.charAt(i));
+            }
+        }
+        int[] asciiClasses = new int[128];
+        List<Character> extras = new ArrayList<>();
+        int classCount = 1;
+        for (char c : alphabet) {
+            if (c < 128) {
+                asciiClasses[c] = classCount++;
+            } else {
+                extras.add(c);
+            }
+        }
+        char[] extraChars = new char[extras.size()];
+        int[] extraClasses = new int[extras.size()];
+        for (int i = 0; i < extras.size(); i++) {
+            extraChars[i] = extras.get(i);
+            extraClasses[i] = classCount++;
+        }
+
+        // Build the trie
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> trieOutputs = new ArrayList<>();
+        trie.add(newRow(classCount));
+        trieOutputs.add(0);
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int cls = classOf(pattern.charAt(i), asciiClasses, extraChars, extraClasses);
+                if (trie.get(state)[cls] < 0) {
+                    trie.get(state)[cls] = trie.size();
+                    trie.add(newRow(classCount));
+                    trieOutputs.add(0);
+                }
+                state = trie.get(state)[cls];
+            }
+            trieOutputs.set(state, trieOutputs.get(state) | flags.get(p));
+        }
+
+        // Breadth-first failure links, folded directly into a full transition table
+        int stateCount = trie.size();
+        int[][] transitions = trie.toArray(new int[0][]);
+        int[] outputs = new int[stateCount];
+        int[] failure = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            outputs[s] = trieOutputs.get(s);
+        }
+
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int cls = 0; cls < classCount; cls++) {
+            int child = transitions[0][cls];
+            if (child < 0) {
+                transitions[0][cls] = 0;
+            } else {
+                failure[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            outputs[state] |= outputs[failure[state]];
+            for (int cls = 0; cls < classCount; cls++) {
+                int child = transitions[state][cls];
+                if (child < 0) {
+                    transitions[state][cls] = transitions[failure[state]][cls];
+                } else {
+                    failure[child] = transitions[failure[state]][cls];
+                    queue.add(child);
+                }
+            }
+        }
+
+        return new SkincareClassifier(transitions, outputs, asciiClasses, extraChars, extraClasses);
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Arguments are the lower-cased keys of the product, or null when the API sent no value.
+     */
+    public boolean isSkincare(String typeKey, String nameKey, String brandKey) {
+        return matches(typeKey, KEYWORD) || matches(nameKey, KEYWORD) || matches(brandKey, BRAND);
+    }
+
+    boolean matches(String text, int flag) {
+        if (text == null) {
+            return false;
+        }
+
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state][classOf(text.charAt(i), asciiClasses, extraChars, extraClasses)];
+            if ((outputs[state] & flag) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int classOf(char c, int[] asciiClasses, char[] extraChars, int[] extraClasses) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        int position = Arrays.binarySearch(extraChars, c);
+        return position >= 0 ? extraClasses[position] : 0;
+    }
+
+    private static void addPatterns(Collection<String> source, int flag, List<String> patterns, List<Integer> flags) {
+        if (source == null) {
+            return;
+        }
+        for (String value : source) {
+            if (value != null && !value.trim().isEmpty()) {
+                patterns.add(value.trim().toLowerCase(Locale.ROOT));
+                flags.add(flag);
+            }
+        }
+    }
+
+    private static int[] newRow(int classCount) {
+        int[] row = new int[classCount];
+        Arrays.fill(row, -1);
+        return row;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.skincareapp;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search-as-you-type. Each edit restarts a short debounce; when it expires the search runs and
+ * any search still in flight is cancelled, abandoning its request and skipping its remaining
+ * stages, so an older query can never overwrite a newer one. When the new query only adds to the
+ * last one (more letters or more words, same filters), the last result is narrowed on the index
+ * instead of searching the whole catalog again. All methods must be called on the main thread.
+ */
+public class TypeaheadSearch {
+    private static final String TAG = "TypeaheadSearch";
+
+    public static final class Options {
+        private long debounceMs = 150;
+
+        // Quiet time after the last edit before searching; zero searches on every edit
+        public Options setDebounce(long duration, TimeUnit unit) {
+            if (duration >= 0 && unit != null) {
+                this.debounceMs = unit.toMillis(duration);
+            }
+            return this;
+        }
+    }
+
+    public interface Callback {
+        // Results for the latest query; narrowed is true when they were derived from the previous results
+        void onResults(String query, PagedProductList products, boolean narrowed);
+        void onError(String query, String errorMessage);
+    }
+
+    // One query with its filters
+    private static final class Request {
+        final String query;
+        final String category;
+        final Double minPrice;
+        final Double maxPrice;
+
+        Request(String query, String category, Double minPrice, Double maxPrice) {
+            this.query = query != null ? query.trim() : "";
+            this.category = category;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+        }
+
+        boolean sameFilters(Request other) {
+            return Objects.equals(category, other.category)
+                    && Objects.equals(minPrice, other.minPrice)
+                    && Objects.equals(maxPrice, other.maxPrice);
+        }
+
+        /**
+         * True when every product matching this request also matches the other: same filters, and
+         * each word of the other query starts some word of this one.
+         */
+        boolean refines(Request other) {
+            if (!sameFilters(other)) {
+                return false;
+            }
+            List<String> words = ProductSearchIndex.tokenize(query);
+            for (String previous : ProductSearchIndex.tokenize(other.query)) {
+                boolean extended = false;
+                for (String word : words) {
+                    if (word.startsWith(previous)) {
+                        extended = true;
+                        break;
+                    }
+                }
+                if (!extended) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Request)) return false;
+            Request request = (Request) o;
+            return query.equals(request.query) && sameFilters(request);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, category, minPrice, maxPrice);
+        }
+    }
+
+    // The last delivered result, kept so the next keystroke can narrow it
+    private static final class Result {
+        final Request request;
+        final ProductSearchIndex index;
+        // Null for every product in the index
+        final int[] ordinals;
+
+        Result(Request request, ProductSearchIndex index, int[] ordinals) {
+            this.request = request;
+            this.index = index;
+            this.ordinals = ordinals;
+        }
+    }
+
+    private final ProductRepository repository;
+    private final AppExecutors executors;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final long debounceMs;
+    private final Callback callback;
+
+    private Request latest;
+    private Runnable pending;
+    private CancellationSignal inFlight;
+    private Result last;
+
+    TypeaheadSearch(ProductRepository repository, Options options, Callback callback) {
+        this.repository = repository;
+        this.executors = AppExecutors.getInstance();
+        this.debounceMs = (options != null ? options : new Options()).debounceMs;
+        this.callback = callback;
+    }
+
+    /**
+     * Call on every edit. Cancels the search for the previous text right away and searches for
+     * this one once the debounce has passed without another edit.
+     */
+    public void onQueryChanged(String query, String category, Double minPrice, Double maxPrice) {
+        Request request = new Request(query, category, minPrice, maxPrice);
+        if (request.equals(latest)) {
+            return;
+        }
+        latest = request;
+
+        cancelPending();
+        pending = () -> {
+            pending = null;
+            start(request);
+        };
+        handler.postDelayed(pending, debounceMs);
+    }
+
+    // Searches at once, skipping the debounce, e.g. when the search button is pressed
+    public void searchNow(String query, String category, Double minPrice, Double maxPrice) {
+        Request request = new Request(query, category, minPrice, maxPrice);
+        latest = request;
+        cancelPending();
+        start(request);
+    }
+
+    // Drops the pending and in-flight searches; nothing more is reported until the next edit
+    public void cancel() {
+        latest = null;
+        cancelPending();
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            handler.removeCallbacks(pending);
+            pending = null;
+        }
+        if (inFlight != null) {
+            inFlight.cancel();
+            inFlight = null;
+        }
+    }
+
+    private void start(Request request) {
+        CancellationSignal signal = new CancellationSignal();
+        inFlight = signal;
+        long startedAt = SystemClock.elapsedRealtime();
+
+        Result previous = last;
+        if (previous != null && request.refines(previous.request) && repository.isCurrentIndex(previous.index)) {
+            executors.compute().execute(() -> {
+                if (signal.isCanceled()) {
+                    return;
+                }
+                try {
+                    int[] ordinals = previous.index.narrow(previous.ordinals, request.query);
+                    publish(request, signal, previous.index, ordinals, true, startedAt);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error narrowing results", e);
+                    executors.mainThread().execute(() -> fail(request, signal, e.getMessage()));
+                }
+            });
+            return;
+        }
+
+        repository.searchCached(request.query, request.category, request.minPrice, request.maxPrice, null, signal,
+                message -> executors.mainThread().execute(() -> fail(request, signal, message)),
+                (index, ordinals, timings) -> publish(request, signal, index, ordinals, false, startedAt));
+    }
+
+    // On a background thread: loads the first page, then hands the list over unless superseded
+    private void publish(Request request, CancellationSignal signal, ProductSearchIndex index, int[] ordinals,
+                         boolean narrowed, long startedAt) {
+        if (signal.isCanceled()) {
+            return;
+        }
+        PagedProductList products = PagedProductList.create(new IndexPagingSource(index, ordinals),
+                executors.compute(), executors.mainThread());
+
+        executors.mainThread().execute(() -> {
+            if (signal.isCanceled() || signal != inFlight) {
+                products.close();
+                return;
+            }
+            inFlight = null;
+            last = new Result(request, index, ordinals);
+            Log.d(TAG, "\"" + request.query + "\": " + products.size() + " products in "
+                    + (SystemClock.elapsedRealtime() - startedAt) + "ms" + (narrowed ? " (narrowed)" : ""));
+            callback.onResults(request.query, products, narrowed);
+        });
+    }
+
+    private void fail(Request request, CancellationSignal signal, String message) {
+        if (signal.isCanceled() || signal != inFlight) {
+            return;
+        }
+        inFlight = null;
+        callback.onError(request.query, message);
+    }
+}
@@ -4,11 +4,17 @@ import java.util.List;
 
 public class UserFilter {
     private String productType;      // e.g., "serum"
+    private double minPrice;         // e.g., 5.00, 0 for no lower bound
     private double maxPrice;         // e.g., 30.00
     private List<String> skinConcerns; // e.g., ["acne", "scarring"]
 
     public UserFilter(String productType, double maxPrice, List<String> skinConcerns) {
+        this(productType, 0, maxPrice, skinConcerns);
+    }
+
+    public UserFilter(String productType, double minPrice, double maxPrice, List<String> skinConcerns) {
         this.productType = productType;
+        this.minPrice = minPrice;
         this.maxPrice = maxPrice;
         this.skinConcerns = skinConcerns;
     }
@@ -17,6 +23,10 @@ public class UserFilter {
         return productType;
     }
 
+    public double getMinPrice() {
+        return minPrice;
+    }
+
     public double getMaxPrice() {
         return maxPrice;
     }